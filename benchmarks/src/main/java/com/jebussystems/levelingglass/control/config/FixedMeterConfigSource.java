@@ -0,0 +1,58 @@
+package com.jebussystems.levelingglass.control.config;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.jebussystems.levelingglass.control.MeterType;
+
+/**
+ * Stands in for the application's stored meter config, with every channel
+ * set to the same meter type.
+ */
+public class FixedMeterConfigSource implements MeterConfigSource
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final Map<Integer, MeterConfig> configMap = new ConcurrentSkipListMap<Integer, MeterConfig>();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public FixedMeterConfigSource(MeterType type, int channels)
+	{
+		for (int channel = 0; channel < channels; channel++)
+		{
+			this.configMap.put(channel,
+			        MeterConfigFactory.createMeterConfig(type, channel));
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// MeterConfigSource implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Set<Integer> getChannelSet()
+	{
+		return this.configMap.keySet();
+	}
+
+	@Override
+	public MeterConfig getConfigForChannel(int channel)
+	{
+		return this.configMap.get(channel);
+	}
+
+	@Override
+	public void setConfigForAllChannels(Set<MeterConfig> configSet)
+	{
+		for (MeterConfig config : configSet)
+		{
+			this.configMap.put(config.getChannel(), config);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import v1.V1;
+
+import com.jebussystems.levelingglass.control.MeterType;
+import com.jebussystems.levelingglass.control.config.FixedMeterConfigSource;
+import com.jebussystems.levelingglass.util.EventLoop;
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * Measures the level notification path through ControlV1. Each invocation
+ * processes 10ms worth of notifications at the given rate, so the time per
+ * operation compares directly against the 10ms budget and the gc profiler's
+ * allocation rate is per 10ms of traffic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ControlV1Benchmark
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// distinct frames to cycle through so the values keep changing
+	private static final int FRAME_COUNT = 16;
+	// notifications per second are modelled as bursts of this many per second
+	private static final int BURSTS_PER_SECOND = 100;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Param({ "1", "8", "32" })
+	public int channels;
+
+	@Param({ "100", "1000", "4000" })
+	public int notificationsPerSecond;
+
+	@Param({ "PPM", "VU" })
+	public MeterType meterType;
+
+	@Param({ "DIRECT", "PARSED" })
+	public ControlV1.DecodeMode decodeMode;
+
+	private ControlV1 control;
+	private ByteBuffer[] frames;
+	private V1.Notification[] notifications;
+	private int burst;
+	private int next = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// setup
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		// keep android logging (and the stub android jar) off the hot path
+		LogWrapper.setLogLevel(LogWrapper.SILENT);
+
+		this.control = ControlV1.getInstance();
+		this.control.setConfigSource(new FixedMeterConfigSource(
+		        this.meterType, this.channels));
+		this.control.setDecodeMode(this.decodeMode);
+
+		// walk the state machine to connected so the level records exist,
+		// on the event loop since that's where requests are tracked
+		EventLoop eventLoop = this.control.getEventLoop();
+		if (ControlV1.State.CONNECTING != this.control.getState())
+		{
+			eventLoop.post(this.control, ControlV1.Event.DISCONNECTED, null);
+			await(ControlV1.State.CONNECTING);
+		}
+		eventLoop.post(this.control, ControlV1.Event.CONNECTED, null);
+		await(ControlV1.State.SYNCHRONIZING);
+
+		// answer the requests the way the device would, so the data lane
+		// opens for every channel
+		V1FrameBuilder builder = new V1FrameBuilder(this.channels);
+		V1.QueryAudioChannelsResponse.Builder query = V1.QueryAudioChannelsResponse
+		        .newBuilder();
+		for (int channel = 0; channel < this.channels; channel++)
+		{
+			query.addChannels(channel);
+		}
+		respond(builder, V1.Response.newBuilder()
+		        .setType(V1.RequestType.QUERYAUDIOCHANNELS).setSuccess(true)
+		        .setQueryaudiochannels(query));
+		// the channel list is handled on the event loop
+		await(ControlV1.State.CONNECTED);
+		for (int channel = 0; channel < this.channels; channel++)
+		{
+			respond(builder, V1.Response.newBuilder()
+			        .setType(V1.RequestType.SETLEVEL).setSuccess(true));
+		}
+
+		// build the frames up front
+		V1.LevelType type = V1.LevelType.valueOf(this.meterType.name());
+		this.frames = new ByteBuffer[FRAME_COUNT];
+		this.notifications = new V1.Notification[FRAME_COUNT];
+		for (int i = 0; i < FRAME_COUNT; i++)
+		{
+			builder.clear();
+			for (int channel = 0; channel < this.channels; channel++)
+			{
+				float level = -60.0f + ((i * 7 + channel * 3) % 60);
+				builder.addRecord(type, channel, level, level + 3.0f,
+				        level / 20.0f);
+			}
+			this.frames[i] = builder.toByteBuffer();
+			this.notifications[i] = V1.ResponseOrNotification.parseFrom(
+			        this.frames[i].array()).getNotification();
+		}
+		this.burst = Math.max(1, this.notificationsPerSecond
+		        / BURSTS_PER_SECOND);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// benchmarks
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Benchmark
+	public float handleSPPMessage()
+	{
+		for (int i = 0; i < this.burst; i++)
+		{
+			this.control.handleSPPMessage(this.frames[this.next]);
+			this.next = (this.next + 1) % FRAME_COUNT;
+		}
+		return this.control.getLevelSnapshotStore().acquire().getLevel(0);
+	}
+
+	@Benchmark
+	public float handleNotification()
+	{
+		for (int i = 0; i < this.burst; i++)
+		{
+			this.control.handleNotification(this.notifications[this.next],
+			        System.nanoTime());
+			this.next = (this.next + 1) % FRAME_COUNT;
+		}
+		return this.control.getLevelSnapshotStore().acquire().getLevel(0);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void await(ControlV1.State state) throws InterruptedException
+	{
+		while (state != this.control.getState())
+		{
+			Thread.sleep(1);
+		}
+	}
+
+	private void respond(V1FrameBuilder builder, V1.Response.Builder response)
+	{
+		int length = builder.encodeResponse(response.build());
+		this.control.handleSPPMessage(ByteBuffer.wrap(builder.getFrame(), 0,
+		        length));
+	}
+}
@@ -0,0 +1,257 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import v1.V1;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Internal;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Hand encodes V1 frames the way the device puts them on the wire. Level
+ * records are staged into primitive arrays and written into a single
+ * reusable buffer, so building a notification frame does not allocate.
+ */
+public class V1FrameBuilder
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// enum numbers looked up by name so we don't depend on the generated
+	// names of the wrapper enum types
+	public static final int MESSAGE_TYPE_RESPONSE = enumNumber(
+	        V1.ResponseOrNotification.getDefaultInstance().getType(),
+	        "RESPONSE");
+	public static final int MESSAGE_TYPE_NOTIFICATION = enumNumber(
+	        V1.ResponseOrNotification.getDefaultInstance().getType(),
+	        "NOTIFICATION");
+	public static final int NOTIFICATION_TYPE_LEVEL = enumNumber(
+	        V1.Notification.getDefaultInstance().getType(), "LEVEL");
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final V1.LevelType[] types;
+	private final int[] channels;
+	private final float[] peaks;
+	private final float[] holds;
+	private final float[] vus;
+	private final byte[] frame;
+	private int count = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public V1FrameBuilder(int maxRecords)
+	{
+		this.types = new V1.LevelType[maxRecords];
+		this.channels = new int[maxRecords];
+		this.peaks = new float[maxRecords];
+		this.holds = new float[maxRecords];
+		this.vus = new float[maxRecords];
+		this.frame = new byte[maxFrameSize(maxRecords)];
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public V1FrameBuilder clear()
+	{
+		this.count = 0;
+		return this;
+	}
+
+	public V1FrameBuilder addRecord(V1.LevelType type, int channel,
+	        float peak, float hold, float vu)
+	{
+		this.types[this.count] = type;
+		this.channels[this.count] = channel;
+		this.peaks[this.count] = peak;
+		this.holds[this.count] = hold;
+		this.vus[this.count] = vu;
+		this.count++;
+		return this;
+	}
+
+	/**
+	 * Encodes the staged records as a ResponseOrNotification and returns the
+	 * number of bytes written into {@link #getFrame()}.
+	 */
+	public int encode()
+	{
+		int levelSize = 0;
+		for (int i = 0; i < this.count; i++)
+		{
+			levelSize += lengthDelimitedSize(
+			        V1.LevelNotification.RECORDS_FIELD_NUMBER, recordSize(i));
+		}
+		int notificationSize = CodedOutputStream.computeEnumSize(
+		        V1.Notification.TYPE_FIELD_NUMBER, NOTIFICATION_TYPE_LEVEL)
+		        + lengthDelimitedSize(V1.Notification.LEVEL_FIELD_NUMBER,
+		                levelSize);
+		int frameSize = CodedOutputStream.computeEnumSize(
+		        V1.ResponseOrNotification.TYPE_FIELD_NUMBER,
+		        MESSAGE_TYPE_NOTIFICATION)
+		        + lengthDelimitedSize(
+		                V1.ResponseOrNotification.NOTIFICATION_FIELD_NUMBER,
+		                notificationSize);
+
+		try
+		{
+			CodedOutputStream stream = CodedOutputStream.newInstance(
+			        this.frame, 0, frameSize);
+			stream.writeEnum(V1.ResponseOrNotification.TYPE_FIELD_NUMBER,
+			        MESSAGE_TYPE_NOTIFICATION);
+			writeLengthDelimitedTag(stream,
+			        V1.ResponseOrNotification.NOTIFICATION_FIELD_NUMBER,
+			        notificationSize);
+			stream.writeEnum(V1.Notification.TYPE_FIELD_NUMBER,
+			        NOTIFICATION_TYPE_LEVEL);
+			writeLengthDelimitedTag(stream,
+			        V1.Notification.LEVEL_FIELD_NUMBER, levelSize);
+			for (int i = 0; i < this.count; i++)
+			{
+				writeLengthDelimitedTag(stream,
+				        V1.LevelNotification.RECORDS_FIELD_NUMBER,
+				        recordSize(i));
+				stream.writeEnum(V1.LevelRecord.TYPE_FIELD_NUMBER,
+				        this.types[i].getNumber());
+				stream.writeUInt32(V1.LevelRecord.CHANNEL_FIELD_NUMBER,
+				        this.channels[i]);
+				stream.writeFloat(V1.LevelRecord.PEAKINDB_FIELD_NUMBER,
+				        this.peaks[i]);
+				stream.writeFloat(V1.LevelRecord.HOLDINDB_FIELD_NUMBER,
+				        this.holds[i]);
+				stream.writeFloat(V1.LevelRecord.VUINUNITS_FIELD_NUMBER,
+				        this.vus[i]);
+			}
+			stream.checkNoSpaceLeft();
+		}
+		catch (IOException e)
+		{
+			// the buffer is sized for the worst case so this is a bug
+			throw new IllegalStateException(e);
+		}
+		return frameSize;
+	}
+
+	/**
+	 * Encodes a response as a ResponseOrNotification and returns the number of
+	 * bytes written into {@link #getFrame()}.
+	 */
+	public int encodeResponse(V1.Response response)
+	{
+		int frameSize = CodedOutputStream.computeEnumSize(
+		        V1.ResponseOrNotification.TYPE_FIELD_NUMBER,
+		        MESSAGE_TYPE_RESPONSE)
+		        + CodedOutputStream.computeMessageSize(
+		                V1.ResponseOrNotification.RESPONSE_FIELD_NUMBER,
+		                response);
+		if (frameSize > this.frame.length)
+		{
+			throw new IllegalArgumentException("response too large, size="
+			        + frameSize);
+		}
+
+		try
+		{
+			CodedOutputStream stream = CodedOutputStream.newInstance(
+			        this.frame, 0, frameSize);
+			stream.writeEnum(V1.ResponseOrNotification.TYPE_FIELD_NUMBER,
+			        MESSAGE_TYPE_RESPONSE);
+			stream.writeMessage(
+			        V1.ResponseOrNotification.RESPONSE_FIELD_NUMBER, response);
+			stream.checkNoSpaceLeft();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return frameSize;
+	}
+
+	public byte[] getFrame()
+	{
+		return frame;
+	}
+
+	/**
+	 * Encodes the staged records into a new buffer, handy when a fixed set of
+	 * frames is built up front.
+	 */
+	public ByteBuffer toByteBuffer()
+	{
+		int length = encode();
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.put(this.frame, 0, length);
+		buffer.flip();
+		return buffer;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private int recordSize(int index)
+	{
+		return CodedOutputStream.computeEnumSize(
+		        V1.LevelRecord.TYPE_FIELD_NUMBER,
+		        this.types[index].getNumber())
+		        + CodedOutputStream.computeUInt32Size(
+		                V1.LevelRecord.CHANNEL_FIELD_NUMBER,
+		                this.channels[index])
+		        + CodedOutputStream.computeFloatSize(
+		                V1.LevelRecord.PEAKINDB_FIELD_NUMBER, 0.0f)
+		        + CodedOutputStream.computeFloatSize(
+		                V1.LevelRecord.HOLDINDB_FIELD_NUMBER, 0.0f)
+		        + CodedOutputStream.computeFloatSize(
+		                V1.LevelRecord.VUINUNITS_FIELD_NUMBER, 0.0f);
+	}
+
+	private static int lengthDelimitedSize(int fieldNumber, int length)
+	{
+		return CodedOutputStream.computeTagSize(fieldNumber)
+		        + CodedOutputStream.computeRawVarint32Size(length) + length;
+	}
+
+	private static void writeLengthDelimitedTag(CodedOutputStream stream,
+	        int fieldNumber, int length) throws IOException
+	{
+		stream.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+		stream.writeRawVarint32(length);
+	}
+
+	private static int maxFrameSize(int maxRecords)
+	{
+		// tags fit in a byte, enums + channels fit in 5 bytes, floats are 4
+		int record = 5 * 1 + 2 * 5 + 3 * 4;
+		int level = maxRecords * (1 + 5 + record);
+		int notification = 1 + 5 + 1 + 5 + level;
+		return 1 + 5 + 1 + 5 + notification;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int enumNumber(Enum<?> sample, String name)
+	{
+		Enum<?> value = Enum.valueOf((Class) sample.getDeclaringClass(), name);
+		return ((Internal.EnumLite) value).getNumber();
+	}
+}
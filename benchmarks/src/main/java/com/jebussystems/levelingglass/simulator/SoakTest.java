@@ -0,0 +1,183 @@
+package com.jebussystems.levelingglass.simulator;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import com.jebussystems.levelingglass.bluetooth.spp.SPPTransportFactory;
+import com.jebussystems.levelingglass.bluetooth.spp.SocketSPPTransport;
+import com.jebussystems.levelingglass.control.MeterType;
+import com.jebussystems.levelingglass.control.config.FixedMeterConfigSource;
+import com.jebussystems.levelingglass.control.v1.ControlV1;
+import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.MetricsRegistry;
+
+/**
+ * Connects the real SPPManager + ControlV1 stack to a V1DeviceSimulator and
+ * reports throughput, notification latency and reconnects once a second.
+ * The state machine and connect-to-first-level metrics are printed at the
+ * end.
+ * <p>
+ * usage: SoakTest [socket|pipe] [channels] [notifications/sec] [seconds]
+ * [disconnect after millis, 0 = never]
+ * <p>
+ * Latency is measured from the simulator writing a notification to ControlV1
+ * telling its listeners about it. Notifications are matched up by their
+ * position in the session, so it assumes none are lost, which holds for both
+ * transports.
+ */
+public class SoakTest implements ControlV1.EventListener
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// latency buckets are powers of 2 in microseconds
+	private static final int LATENCY_BUCKETS = 24;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final V1DeviceSimulator simulator;
+	// only touched by the SPP read thread once a session is up
+	private long received = 0;
+	private long totalReceived = 0;
+	private long latencyCount = 0;
+	private long latencySum = 0;
+	private long latencyMax = 0;
+	private final long[] latencyBuckets = new long[LATENCY_BUCKETS];
+	private volatile int connects = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public SoakTest(V1DeviceSimulator simulator)
+	{
+		this.simulator = simulator;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws Exception
+	{
+		String transport = (args.length > 0) ? args[0] : "socket";
+		int channels = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+		int rate = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+		int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : 60;
+		int disconnectAfter = (args.length > 4) ? Integer.parseInt(args[4])
+		        : 0;
+
+		// there's no android logging off the device
+		LogWrapper.setLogLevel(LogWrapper.SILENT);
+
+		V1DeviceSimulator simulator = new V1DeviceSimulator(channels, rate);
+		simulator.setDisconnectAfter(disconnectAfter);
+		SPPTransportFactory factory;
+		if (true == "pipe".equals(transport))
+		{
+			factory = simulator.createPipeTransportFactory();
+		}
+		else
+		{
+			simulator.listen(new InetSocketAddress(
+			        InetAddress.getLoopbackAddress(), 0));
+			factory = new SocketSPPTransport.Factory(
+			        simulator.getLocalAddress());
+		}
+
+		SoakTest test = new SoakTest(simulator);
+		ControlV1 control = ControlV1.getInstance();
+		control.setConfigSource(new FixedMeterConfigSource(MeterType.PPM,
+		        channels));
+		control.addListener(test);
+		control.getManager().connect(factory);
+
+		for (int second = 1; second <= seconds; second++)
+		{
+			Thread.sleep(1000);
+			System.out.println(second + "s " + test.report());
+		}
+
+		control.getManager().disconnect();
+		simulator.close();
+		System.out.println("done " + simulator);
+		System.out.print(MetricsRegistry.report());
+		// the event loop thread is not a daemon
+		System.exit(0);
+	}
+
+	public synchronized String report()
+	{
+		long average = (0 == latencyCount) ? 0 : latencySum / latencyCount;
+		String result = "received=" + totalReceived + " sent="
+		        + simulator.getFramesSent() + " connects=" + connects
+		        + " sessions=" + simulator.getSessionCount()
+		        + " latency[avg=" + average + "us max=" + latencyMax
+		        + "us p99<=" + percentile(0.99) + "us]";
+		// each report covers the last second
+		latencyCount = 0;
+		latencySum = 0;
+		latencyMax = 0;
+		for (int i = 0; i < LATENCY_BUCKETS; i++)
+		{
+			latencyBuckets[i] = 0;
+		}
+		return result;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// ControlV1.EventListener implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public synchronized void notifyLevelsUpdated()
+	{
+		long sent = simulator.getSendTime(received++);
+		totalReceived++;
+		if (0 == sent)
+		{
+			return;
+		}
+		long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent);
+		latencyCount++;
+		latencySum += latency;
+		latencyMax = Math.max(latencyMax, latency);
+		int bucket = 64 - Long.numberOfLeadingZeros(latency);
+		latencyBuckets[Math.min(bucket, LATENCY_BUCKETS - 1)]++;
+	}
+
+	@Override
+	public synchronized void notifyStateChange(ControlV1.State state)
+	{
+		// the query goes out as we enter this state so nothing from the new
+		// session can have arrived yet
+		if (ControlV1.State.SYNCHRONIZING == state)
+		{
+			received = 0;
+			connects++;
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private long percentile(double fraction)
+	{
+		long target = (long) Math.ceil(latencyCount * fraction);
+		long seen = 0;
+		for (int i = 0; i < LATENCY_BUCKETS; i++)
+		{
+			seen += latencyBuckets[i];
+			if ((seen >= target) && (0 != seen))
+			{
+				return (0 == i) ? 0 : (1L << i) - 1;
+			}
+		}
+		return latencyMax;
+	}
+}
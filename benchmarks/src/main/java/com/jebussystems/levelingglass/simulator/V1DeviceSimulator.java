@@ -0,0 +1,474 @@
+package com.jebussystems.levelingglass.simulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import v1.V1;
+
+import com.google.protobuf.CodedInputStream;
+import com.jebussystems.levelingglass.bluetooth.spp.PipeSPPTransport;
+import com.jebussystems.levelingglass.bluetooth.spp.SPPFrameDecoder;
+import com.jebussystems.levelingglass.bluetooth.spp.SPPFrameEncoder;
+import com.jebussystems.levelingglass.bluetooth.spp.SPPTransport;
+import com.jebussystems.levelingglass.bluetooth.spp.SPPTransportFactory;
+import com.jebussystems.levelingglass.bluetooth.spp.SocketSPPTransport;
+import com.jebussystems.levelingglass.control.v1.V1FrameBuilder;
+
+/**
+ * Plays the part of a Leveling Glass device on the far end of an SPP
+ * transport. It answers QUERYAUDIOCHANNELS and SETLEVEL requests and streams
+ * level notifications with synthetic values for every channel that has been
+ * given a meter type. Only one session is served at a time, a new connection
+ * replaces the old one just like the real device.
+ */
+public class V1DeviceSimulator
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// send times kept for latency measurement, must be a power of 2
+	private static final int SEND_TIME_SLOTS = 1 << 16;
+	private static final int MAX_BATCH_SIZE = 4096;
+	// give up on catching up if the streamer falls this far behind
+	private static final long MAX_LAG_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final int channels;
+	private final int notificationsPerSecond;
+	private volatile int disconnectAfterMillis = 0;
+	private volatile long dropRequest = 0;
+	private volatile Session session = null;
+	private ServerSocketChannel server = null;
+	private Thread acceptThread = null;
+	private final AtomicLong sessionCount = new AtomicLong();
+	private final AtomicLong framesSent = new AtomicLong();
+	private final AtomicLong requestsReceived = new AtomicLong();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public V1DeviceSimulator(int channels, int notificationsPerSecond)
+	{
+		this.channels = channels;
+		this.notificationsPerSecond = notificationsPerSecond;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Drops every session this long after it starts streaming, to exercise
+	 * the reconnect path. 0 keeps sessions up until the peer goes away.
+	 */
+	public void setDisconnectAfter(int millis)
+	{
+		this.disconnectAfterMillis = millis;
+	}
+
+	/**
+	 * Reads the given request, counting from 1 across every session, and
+	 * never answers it, to exercise the request timeout. 0 answers them all.
+	 */
+	public void setDropRequest(long request)
+	{
+		this.dropRequest = request;
+	}
+
+	/**
+	 * Accepts TCP connections, each one becomes the current session.
+	 */
+	public void listen(SocketAddress address) throws IOException
+	{
+		this.server = ServerSocketChannel.open();
+		this.server.socket().setReuseAddress(true);
+		this.server.socket().bind(address);
+		this.acceptThread = new Thread("simulator-accept")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (true)
+					{
+						SocketChannel channel = server.accept();
+						serve(new SocketSPPTransport(channel));
+					}
+				}
+				catch (IOException e)
+				{
+					// server closed
+				}
+			}
+		};
+		this.acceptThread.setDaemon(true);
+		this.acceptThread.start();
+	}
+
+	public SocketAddress getLocalAddress()
+	{
+		return this.server.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * Transport factory for an in-process connection. Every transport it
+	 * creates is one end of a new pipe pair whose other end is served by this
+	 * simulator.
+	 */
+	public SPPTransportFactory createPipeTransportFactory()
+	{
+		return new SPPTransportFactory()
+		{
+			@Override
+			public SPPTransport createTransport() throws IOException
+			{
+				PipeSPPTransport[] pair = PipeSPPTransport.createPair();
+				serve(pair[1]);
+				return pair[0];
+			}
+
+			@Override
+			public String toString()
+			{
+				return "pipe:simulator";
+			}
+		};
+	}
+
+	/**
+	 * Serves the device end of a transport on its own threads.
+	 */
+	public void serve(SPPTransport transport)
+	{
+		Session previous = this.session;
+		if (null != previous)
+		{
+			previous.close();
+		}
+		this.session = new Session(transport);
+		this.sessionCount.incrementAndGet();
+		this.session.start();
+	}
+
+	/**
+	 * When the given notification of the current session was written, in
+	 * System.nanoTime() terms, or 0 if it hasn't been sent or has aged out.
+	 */
+	public long getSendTime(long frame)
+	{
+		Session current = this.session;
+		if (null == current)
+		{
+			return 0;
+		}
+		return current.getSendTime(frame);
+	}
+
+	public long getSessionCount()
+	{
+		return sessionCount.get();
+	}
+
+	public long getFramesSent()
+	{
+		return framesSent.get();
+	}
+
+	public long getRequestsReceived()
+	{
+		return requestsReceived.get();
+	}
+
+	public void close() throws IOException
+	{
+		if (null != this.server)
+		{
+			this.server.close();
+		}
+		Session current = this.session;
+		if (null != current)
+		{
+			current.close();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "simulator [sessions=" + getSessionCount() + " frames="
+		        + getFramesSent() + " requests=" + getRequestsReceived() + "]";
+	}
+
+	/**
+	 * Runs a standalone simulator on a TCP port.
+	 * <p>
+	 * usage: V1DeviceSimulator [port] [channels] [notifications/sec]
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 5555;
+		int channels = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+		int rate = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+
+		V1DeviceSimulator simulator = new V1DeviceSimulator(channels, rate);
+		simulator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+		        port));
+		System.out.println("listening on " + simulator.getLocalAddress()
+		        + " channels=" + channels + " rate=" + rate);
+		while (true)
+		{
+			Thread.sleep(1000);
+			System.out.println(simulator);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// inner classes
+	// /////////////////////////////////////////////////////////////////////////
+
+	private class Session
+	{
+		private final SPPTransport transport;
+		private final SPPFrameEncoder encoder;
+		private final SPPFrameDecoder decoder;
+		// replaced as a whole so the streamer always sees a consistent set
+		private volatile V1.LevelType[] levelTypes;
+		private final long[] sendTimes = new long[SEND_TIME_SLOTS];
+		private volatile boolean running = true;
+		private final Thread readThread;
+		private final Thread streamThread;
+
+		public Session(SPPTransport transport)
+		{
+			this.transport = transport;
+			this.encoder = new SPPFrameEncoder(transport.getWriteChannel(),
+			        MAX_BATCH_SIZE);
+			this.decoder = new SPPFrameDecoder(transport.getReadChannel());
+			this.levelTypes = new V1.LevelType[channels];
+			Arrays.fill(this.levelTypes, V1.LevelType.NONE);
+			this.readThread = new Thread("simulator-read")
+			{
+				@Override
+				public void run()
+				{
+					readRequests();
+				}
+			};
+			this.streamThread = new Thread("simulator-stream")
+			{
+				@Override
+				public void run()
+				{
+					streamLevels();
+				}
+			};
+			this.readThread.setDaemon(true);
+			this.streamThread.setDaemon(true);
+		}
+
+		public void start()
+		{
+			this.readThread.start();
+		}
+
+		public long getSendTime(long frame)
+		{
+			return this.sendTimes[(int) (frame & (SEND_TIME_SLOTS - 1))];
+		}
+
+		public void close()
+		{
+			if (false == this.running)
+			{
+				return;
+			}
+			this.running = false;
+			try
+			{
+				// unblocks the reader
+				this.transport.close();
+			}
+			catch (IOException e)
+			{
+				// going away anyway
+			}
+			this.streamThread.interrupt();
+		}
+
+		private void readRequests()
+		{
+			V1FrameBuilder builder = new V1FrameBuilder(channels);
+			try
+			{
+				this.transport.connect();
+				this.streamThread.start();
+				while (true == this.running)
+				{
+					ByteBuffer frame = this.decoder.readFrame();
+					try
+					{
+						V1.Request request = V1.Request
+						        .parseFrom(CodedInputStream.newInstance(
+						                frame.array(),
+						                frame.arrayOffset() + frame.position(),
+						                frame.remaining()));
+						if (requestsReceived.incrementAndGet() == dropRequest)
+						{
+							continue;
+						}
+						int length = builder
+						        .encodeResponse(handleRequest(request));
+						send(builder.getFrame(), length);
+					}
+					finally
+					{
+						this.decoder.releaseFrame(frame);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				// peer went away or we were closed
+			}
+			finally
+			{
+				close();
+			}
+		}
+
+		private V1.Response handleRequest(V1.Request request)
+		{
+			V1.Response.Builder response = V1.Response.newBuilder();
+			response.setType(request.getType());
+			switch (request.getType())
+			{
+				case QUERYAUDIOCHANNELS:
+					V1.QueryAudioChannelsResponse.Builder query = V1.QueryAudioChannelsResponse
+					        .newBuilder();
+					for (int channel = 0; channel < channels; channel++)
+					{
+						query.addChannels(channel);
+					}
+					response.setQueryaudiochannels(query);
+					response.setSuccess(true);
+					break;
+				case SETLEVEL:
+					V1.SetLevelRequest setLevel = request.getSetlevel();
+					int channel = setLevel.getChannel();
+					if (channel < channels)
+					{
+						V1.LevelType[] types = this.levelTypes.clone();
+						types[channel] = setLevel.getType();
+						this.levelTypes = types;
+						response.setSuccess(true);
+					}
+					else
+					{
+						response.setSuccess(false);
+					}
+					break;
+				default:
+					response.setSuccess(false);
+					break;
+			}
+			return response.build();
+		}
+
+		private void streamLevels()
+		{
+			V1FrameBuilder builder = new V1FrameBuilder(channels);
+			float[] holds = new float[channels];
+			long period = TimeUnit.SECONDS.toNanos(1) / notificationsPerSecond;
+			long start = System.nanoTime();
+			long next = start;
+			long frame = 0;
+			try
+			{
+				while (true == this.running)
+				{
+					V1.LevelType[] types = this.levelTypes;
+					builder.clear();
+					// a slow 1Hz sweep, offset per channel
+					double phase = 2.0 * Math.PI * next / 1e9;
+					boolean empty = true;
+					for (int channel = 0; channel < channels; channel++)
+					{
+						if (V1.LevelType.NONE == types[channel])
+						{
+							continue;
+						}
+						float level = (float) (0.5 + 0.5 * Math.sin(phase
+						        + channel));
+						float peak = -60.0f + 60.0f * level;
+						holds[channel] = Math.max(holds[channel] - 0.5f, peak);
+						float vu = -20.0f + 23.0f * level;
+						builder.addRecord(types[channel], channel, peak,
+						        holds[channel], vu);
+						empty = false;
+					}
+					// nothing is streamed until a meter has been set
+					if (false == empty)
+					{
+						int length = builder.encode();
+						this.sendTimes[(int) (frame & (SEND_TIME_SLOTS - 1))] = System
+						        .nanoTime();
+						send(builder.getFrame(), length);
+						framesSent.incrementAndGet();
+						frame++;
+					}
+
+					int dropAfter = disconnectAfterMillis;
+					if ((0 != dropAfter)
+					        && (System.nanoTime() - start >= TimeUnit.MILLISECONDS
+					                .toNanos(dropAfter)))
+					{
+						close();
+						break;
+					}
+
+					// pace against the schedule rather than the last send so
+					// the rate holds even at several kHz
+					next += period;
+					long now = System.nanoTime();
+					if (now - next > MAX_LAG_IN_NANOS)
+					{
+						next = now;
+					}
+					else if (next > now)
+					{
+						LockSupport.parkNanos(next - now);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				close();
+			}
+		}
+
+		private void send(byte[] frame, int length) throws IOException
+		{
+			// the reader answers requests while the streamer sends levels
+			synchronized (this.encoder)
+			{
+				this.encoder.writeFrame(ByteBuffer.wrap(frame, 0, length));
+				this.encoder.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package com.jebussystems.levelingglass.tools;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares the app classes of two builds, normally target/classes against
+ * the ProGuard output of a release build, and reports per class the number
+ * of methods, the bytes of bytecode, the call sites of LogWrapper.v/d and the
+ * trace strings ("Class::method ...") left in the constant pool.
+ * <p>
+ * usage: BytecodeReport [before dir|jar] [after dir|jar]
+ */
+public class BytecodeReport
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String APP_PREFIX = "com/jebussystems/levelingglass/";
+	private static final String LOG_WRAPPER = APP_PREFIX + "util/LogWrapper";
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+
+	private static final int OPCODE_TABLESWITCH = 0xaa;
+	private static final int OPCODE_LOOKUPSWITCH = 0xab;
+	private static final int OPCODE_INVOKESTATIC = 0xb8;
+	private static final int OPCODE_WIDE = 0xc4;
+	private static final int OPCODE_IINC = 0x84;
+
+	// instruction lengths including the opcode, 0 for the variable ones
+	private static final int[] OPCODE_LENGTHS = new int[256];
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static class ClassStats
+	{
+		int methods;
+		int codeBytes;
+		int logCalls;
+		int traceStrings;
+
+		void add(ClassStats other)
+		{
+			this.methods += other.methods;
+			this.codeBytes += other.codeBytes;
+			this.logCalls += other.logCalls;
+			this.traceStrings += other.traceStrings;
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	static
+	{
+		for (int opcode = 0; opcode < 256; opcode++)
+		{
+			OPCODE_LENGTHS[opcode] = 1;
+		}
+		setLength(2, 0x10, 0x12, 0xa9, 0xbc);
+		setLengthRange(2, 0x15, 0x19);
+		setLengthRange(2, 0x36, 0x3a);
+		setLength(3, 0x11, 0x13, 0x14, OPCODE_IINC, 0xbb, 0xbd, 0xc0, 0xc1,
+		        0xc6, 0xc7);
+		setLengthRange(3, 0x99, 0xa8);
+		setLengthRange(3, 0xb2, OPCODE_INVOKESTATIC);
+		setLength(4, 0xc5);
+		setLength(5, 0xb9, 0xba, 0xc8, 0xc9);
+		setLength(0, OPCODE_TABLESWITCH, OPCODE_LOOKUPSWITCH, OPCODE_WIDE);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws IOException
+	{
+		if (2 != args.length)
+		{
+			System.err.println("usage: BytecodeReport [before] [after]");
+			System.exit(1);
+		}
+		Map<String, ClassStats> before = readClasses(new File(args[0]));
+		Map<String, ClassStats> after = readClasses(new File(args[1]));
+
+		Map<String, ClassStats> names = new TreeMap<String, ClassStats>(before);
+		names.putAll(after);
+		ClassStats totalBefore = new ClassStats();
+		ClassStats totalAfter = new ClassStats();
+		System.out.println(String.format("%-60s %15s %17s %11s %11s",
+		        "class", "methods", "code bytes", "log calls", "traces"));
+		for (String name : names.keySet())
+		{
+			ClassStats from = before.get(name);
+			ClassStats to = after.get(name);
+			// removed classes show up as all zeroes
+			from = (null == from) ? new ClassStats() : from;
+			to = (null == to) ? new ClassStats() : to;
+			totalBefore.add(from);
+			totalAfter.add(to);
+			System.out.println(format(name.substring(APP_PREFIX.length()),
+			        from, to));
+		}
+		System.out.println(format("total", totalBefore, totalAfter));
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static void setLength(int length, int... opcodes)
+	{
+		for (int opcode : opcodes)
+		{
+			OPCODE_LENGTHS[opcode] = length;
+		}
+	}
+
+	private static void setLengthRange(int length, int first, int last)
+	{
+		for (int opcode = first; opcode <= last; opcode++)
+		{
+			OPCODE_LENGTHS[opcode] = length;
+		}
+	}
+
+	private static String format(String name, ClassStats from, ClassStats to)
+	{
+		return String.format("%-60s %6d -> %-6d %7d -> %-7d %4d -> %-4d %4d -> %-4d",
+		        name, from.methods, to.methods, from.codeBytes, to.codeBytes,
+		        from.logCalls, to.logCalls, from.traceStrings, to.traceStrings);
+	}
+
+	private static Map<String, ClassStats> readClasses(File location)
+	        throws IOException
+	{
+		Map<String, ClassStats> classes = new TreeMap<String, ClassStats>();
+		if (true == location.isDirectory())
+		{
+			readDirectory(location, "", classes);
+			return classes;
+		}
+		ZipFile jar = new ZipFile(location);
+		try
+		{
+			Enumeration<? extends ZipEntry> entries = jar.entries();
+			while (true == entries.hasMoreElements())
+			{
+				ZipEntry entry = entries.nextElement();
+				if (true == isAppClass(entry.getName()))
+				{
+					readClass(entry.getName(), jar.getInputStream(entry),
+					        classes);
+				}
+			}
+		}
+		finally
+		{
+			jar.close();
+		}
+		return classes;
+	}
+
+	private static void readDirectory(File directory, String path,
+	        Map<String, ClassStats> classes) throws IOException
+	{
+		for (File file : directory.listFiles())
+		{
+			String name = path + file.getName();
+			if (true == file.isDirectory())
+			{
+				readDirectory(file, name + "/", classes);
+			}
+			else if (true == isAppClass(name))
+			{
+				readClass(name, new FileInputStream(file), classes);
+			}
+		}
+	}
+
+	private static boolean isAppClass(String name)
+	{
+		return name.startsWith(APP_PREFIX) && name.endsWith(".class");
+	}
+
+	private static void readClass(String name, InputStream input,
+	        Map<String, ClassStats> classes) throws IOException
+	{
+		try
+		{
+			classes.put(name.substring(0, name.length() - ".class".length()),
+			        parse(new DataInputStream(input)));
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	private static ClassStats parse(DataInputStream in) throws IOException
+	{
+		ClassStats stats = new ClassStats();
+		// magic + version
+		in.readInt();
+		in.readInt();
+
+		// only the entries needed to resolve method refs are kept
+		int count = in.readUnsignedShort();
+		int[] tags = new int[count];
+		String[] utf8 = new String[count];
+		int[] first = new int[count];
+		int[] second = new int[count];
+		for (int index = 1; index < count; index++)
+		{
+			int tag = in.readUnsignedByte();
+			tags[index] = tag;
+			switch (tag)
+			{
+				case CONSTANT_UTF8:
+					utf8[index] = in.readUTF();
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case 16: // method type
+				case 19: // module
+				case 20: // package
+					first[index] = in.readUnsignedShort();
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					in.readUnsignedByte();
+					in.readUnsignedShort();
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					in.readLong();
+					// takes up two slots
+					index++;
+					break;
+				default:
+					// the rest are all two u2 values or a u4
+					first[index] = in.readUnsignedShort();
+					second[index] = in.readUnsignedShort();
+					break;
+			}
+		}
+		for (int index = 1; index < count; index++)
+		{
+			if ((CONSTANT_STRING == tags[index])
+			        && (true == utf8[first[index]].contains("::")))
+			{
+				stats.traceStrings++;
+			}
+		}
+
+		// access, this, super
+		in.skipBytes(6);
+		in.skipBytes(2 * in.readUnsignedShort());
+		// fields
+		int fields = in.readUnsignedShort();
+		for (int field = 0; field < fields; field++)
+		{
+			in.skipBytes(6);
+			skipAttributes(in);
+		}
+		// methods
+		stats.methods = in.readUnsignedShort();
+		for (int method = 0; method < stats.methods; method++)
+		{
+			in.skipBytes(6);
+			int attributes = in.readUnsignedShort();
+			for (int attribute = 0; attribute < attributes; attribute++)
+			{
+				String attributeName = utf8[in.readUnsignedShort()];
+				int length = in.readInt();
+				if (false == "Code".equals(attributeName))
+				{
+					in.skipBytes(length);
+					continue;
+				}
+				// max stack + max locals
+				in.skipBytes(4);
+				byte[] code = new byte[in.readInt()];
+				in.readFully(code);
+				stats.codeBytes += code.length;
+				stats.logCalls += countLogCalls(code, tags, utf8, first,
+				        second);
+				in.skipBytes(length - 8 - code.length);
+			}
+		}
+		return stats;
+	}
+
+	private static void skipAttributes(DataInputStream in) throws IOException
+	{
+		int attributes = in.readUnsignedShort();
+		for (int attribute = 0; attribute < attributes; attribute++)
+		{
+			in.skipBytes(2);
+			in.skipBytes(in.readInt());
+		}
+	}
+
+	private static int countLogCalls(byte[] code, int[] tags, String[] utf8,
+	        int[] first, int[] second)
+	{
+		int calls = 0;
+		int pc = 0;
+		while (pc < code.length)
+		{
+			int opcode = code[pc] & 0xff;
+			if (OPCODE_INVOKESTATIC == opcode)
+			{
+				int ref = readU2(code, pc + 1);
+				if (CONSTANT_METHODREF == tags[ref])
+				{
+					String owner = utf8[first[first[ref]]];
+					String name = utf8[first[second[ref]]];
+					if ((true == LOG_WRAPPER.equals(owner))
+					        && ((true == "v".equals(name)) || (true == "d"
+					                .equals(name))))
+					{
+						calls++;
+					}
+				}
+			}
+			pc += instructionLength(code, pc);
+		}
+		return calls;
+	}
+
+	private static int instructionLength(byte[] code, int pc)
+	{
+		int opcode = code[pc] & 0xff;
+		int length = OPCODE_LENGTHS[opcode];
+		if (0 != length)
+		{
+			return length;
+		}
+		if (OPCODE_WIDE == opcode)
+		{
+			return (OPCODE_IINC == (code[pc + 1] & 0xff)) ? 6 : 4;
+		}
+		// switches are padded so their operands are 4 byte aligned
+		int operands = (pc + 4) & ~3;
+		if (OPCODE_TABLESWITCH == opcode)
+		{
+			int low = readS4(code, operands + 4);
+			int high = readS4(code, operands + 8);
+			return operands - pc + 12 + 4 * (high - low + 1);
+		}
+		int pairs = readS4(code, operands + 4);
+		return operands - pc + 8 + 8 * pairs;
+	}
+
+	private static int readU2(byte[] code, int offset)
+	{
+		return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+	}
+
+	private static int readS4(byte[] code, int offset)
+	{
+		return (readU2(code, offset) << 16) | readU2(code, offset + 2);
+	}
+}
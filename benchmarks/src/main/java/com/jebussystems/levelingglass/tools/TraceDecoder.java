@@ -0,0 +1,39 @@
+package com.jebussystems.levelingglass.tools;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.jebussystems.levelingglass.util.TraceRecorder;
+
+/**
+ * Prints a trace dump pulled off a device, one event per line.
+ * <p>
+ * usage: TraceDecoder [trace file]
+ */
+public class TraceDecoder
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws IOException
+	{
+		if (1 != args.length)
+		{
+			System.err.println("usage: TraceDecoder [trace file]");
+			System.exit(1);
+		}
+		InputStream input = new BufferedInputStream(new FileInputStream(
+		        args[0]));
+		try
+		{
+			TraceRecorder.decode(input, System.out);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+}
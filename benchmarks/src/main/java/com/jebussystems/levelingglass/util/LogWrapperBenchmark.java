@@ -0,0 +1,91 @@
+package com.jebussystems.levelingglass.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what a log call costs on the meter path, both when the log is
+ * built and when the level filter throws it away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogWrapperBenchmark
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "benchmark";
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// number of key/value pairs in the log
+	@Param({ "1", "3" })
+	public int pairs;
+
+	private Object[] args;
+	private Object value = new Object();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// setup
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Setup
+	public void setup()
+	{
+		// never let a log reach the stub android jar
+		LogWrapper.setLogLevel(LogWrapper.SILENT);
+
+		this.args = new Object[1 + 2 * this.pairs];
+		this.args[0] = "ControlV1::handleSPPMessage enter";
+		for (int i = 0; i < this.pairs; i++)
+		{
+			this.args[1 + 2 * i] = "key" + i + "=";
+			this.args[2 + 2 * i] = Integer.valueOf(i);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// benchmarks
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Benchmark
+	public String concatenateArgs()
+	{
+		return LogWrapper.concatenateArgs(this.args);
+	}
+
+	@Benchmark
+	public void filteredVerbose()
+	{
+		// resolves to a fixed-arity overload so nothing is allocated
+		LogWrapper.v(TAG, "ControlV1::handleSPPMessage enter", "this=", this,
+		        "message=", this.value);
+	}
+
+	@Benchmark
+	public void filteredVerboseVarargs()
+	{
+		// too many arguments for the overloads, the array is built at the
+		// call site before the level check
+		LogWrapper.v(TAG, "ControlV1::handleSPPMessage enter", "this=", this,
+		        "message=", this.value, "a=", this.value, "b=", this.value);
+	}
+}
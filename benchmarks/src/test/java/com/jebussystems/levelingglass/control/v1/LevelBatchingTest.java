@@ -0,0 +1,186 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jebussystems.levelingglass.bluetooth.spp.SPPTransport;
+import com.jebussystems.levelingglass.bluetooth.spp.SPPTransportFactory;
+import com.jebussystems.levelingglass.control.MeterType;
+import com.jebussystems.levelingglass.control.config.FixedMeterConfigSource;
+import com.jebussystems.levelingglass.control.records.LevelSnapshot;
+import com.jebussystems.levelingglass.simulator.V1DeviceSimulator;
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * Checks a config change covering several channels reaches the device in a
+ * single write, which is what lets the whole set complete in one round trip.
+ */
+public class LevelBatchingTest
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final int CHANNELS = 8;
+	private static final int RATE = 200;
+	private static final long WAIT_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private V1DeviceSimulator simulator = null;
+	// channel writes made by the app end of every connection
+	private final AtomicLong writes = new AtomicLong();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// tests
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void configChangeGoesOutInOneWrite() throws Exception
+	{
+		// there's no android logging off the device
+		LogWrapper.setLogLevel(LogWrapper.SILENT);
+
+		this.simulator = new V1DeviceSimulator(CHANNELS, RATE);
+		ControlV1 control = ControlV1.getInstance();
+		control.setConfigSource(new FixedMeterConfigSource(MeterType.PPM,
+		        CHANNELS));
+		control.getManager().connect(
+		        new CountingTransportFactory(
+		                this.simulator.createPipeTransportFactory()));
+		waitForType(control, MeterType.PPM);
+
+		// every channel changes type
+		long requests = this.simulator.getRequestsReceived();
+		long before = this.writes.get();
+		control.setConfigSource(new FixedMeterConfigSource(MeterType.VU,
+		        CHANNELS));
+		control.notifyLevelConfigChange();
+		waitForType(control, MeterType.VU);
+
+		assertEquals(requests + CHANNELS, this.simulator.getRequestsReceived());
+		assertEquals("SETLEVEL writes", 1, this.writes.get() - before);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		ControlV1.getInstance().getManager().disconnect();
+		if (null != this.simulator)
+		{
+			this.simulator.close();
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static void waitForType(ControlV1 control, MeterType type)
+	        throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + WAIT_IN_MILLIS;
+		while (false == hasType(control.getLevelSnapshotStore().acquire(),
+		        type))
+		{
+			assertTrue("channels never became " + type,
+			        System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static boolean hasType(LevelSnapshot snapshot, MeterType type)
+	{
+		for (int channel = 0; channel < CHANNELS; channel++)
+		{
+			if (type != snapshot.getType(channel))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// inner classes
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Counts the writes made to each transport it creates.
+	 */
+	private class CountingTransportFactory implements SPPTransportFactory
+	{
+		private final SPPTransportFactory factory;
+
+		public CountingTransportFactory(SPPTransportFactory factory)
+		{
+			this.factory = factory;
+		}
+
+		@Override
+		public SPPTransport createTransport() throws IOException
+		{
+			final SPPTransport transport = this.factory.createTransport();
+			final WritableByteChannel channel = transport.getWriteChannel();
+			final WritableByteChannel counted = new WritableByteChannel()
+			{
+				@Override
+				public int write(ByteBuffer buffer) throws IOException
+				{
+					writes.incrementAndGet();
+					return channel.write(buffer);
+				}
+
+				@Override
+				public boolean isOpen()
+				{
+					return channel.isOpen();
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					channel.close();
+				}
+			};
+			return new SPPTransport()
+			{
+				@Override
+				public void connect() throws IOException
+				{
+					transport.connect();
+				}
+
+				@Override
+				public ReadableByteChannel getReadChannel()
+				{
+					return transport.getReadChannel();
+				}
+
+				@Override
+				public WritableByteChannel getWriteChannel()
+				{
+					return counted;
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					transport.close();
+				}
+			};
+		}
+	}
+}
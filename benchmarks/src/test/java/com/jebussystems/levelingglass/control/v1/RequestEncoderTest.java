@@ -0,0 +1,98 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import v1.V1;
+
+/**
+ * Checks the requests RequestEncoder writes by hand are byte for byte what
+ * the generated protobuf code builds for the same request.
+ */
+public class RequestEncoderTest
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final int MAX_CHANNELS = 64;
+	// both sides of every varint length change, and channels past the cache
+	private static final int[] CHANNELS = { 0, 1, 63, 64, 127, 128, 16383,
+	        16384, Integer.MAX_VALUE };
+	private static final int[] HOLDTIMES = { RequestEncoder.NO_HOLDTIME, 0,
+	        1, 127, 128, 1000, 16384, Integer.MAX_VALUE };
+
+	// /////////////////////////////////////////////////////////////////////////
+	// tests
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void queryChannelsMatchesGeneratedCode()
+	{
+		RequestEncoder encoder = new RequestEncoder(MAX_CHANNELS);
+		byte[] expected = V1.Request
+		        .newBuilder()
+		        .setType(V1.RequestType.QUERYAUDIOCHANNELS)
+		        .setQueryaudiochannels(
+		                V1.QueryAudioChannelsRequest.newBuilder()).build()
+		        .toByteArray();
+		byte[] output = new byte[256];
+		int length = encoder.encodeQueryChannels(output);
+		assertEquals(expected.length, encoder.getQueryChannelsSize());
+		assertArrayEquals(expected, Arrays.copyOf(output, length));
+	}
+
+	@Test
+	public void setLevelMatchesGeneratedCode()
+	{
+		RequestEncoder encoder = new RequestEncoder(MAX_CHANNELS);
+		byte[] output = new byte[256];
+		// twice over, so the second pass comes from the cached templates
+		// after they've been patched for every hold time
+		for (int pass = 0; pass < 2; pass++)
+		{
+			for (V1.LevelType type : V1.LevelType.values())
+			{
+				for (int channel : CHANNELS)
+				{
+					for (int holdtime : HOLDTIMES)
+					{
+						byte[] expected = buildSetLevel(type, channel,
+						        holdtime);
+						// leftovers from the last request mustn't leak in
+						Arrays.fill(output, (byte) 0xff);
+						int length = encoder.encodeSetLevel(output, type,
+						        channel, holdtime);
+						String request = "type=" + type + " channel="
+						        + channel + " holdtime=" + holdtime;
+						assertEquals(request, expected.length,
+						        encoder.getSetLevelSize(type, channel, holdtime));
+						assertArrayEquals(request, expected,
+						        Arrays.copyOf(output, length));
+					}
+				}
+			}
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static byte[] buildSetLevel(V1.LevelType type, int channel,
+	        int holdtime)
+	{
+		V1.SetLevelRequest.Builder setLevel = V1.SetLevelRequest.newBuilder()
+		        .setType(type).setChannel(channel);
+		if (RequestEncoder.NO_HOLDTIME != holdtime)
+		{
+			setLevel.setHoldtime(holdtime);
+		}
+		return V1.Request.newBuilder().setType(V1.RequestType.SETLEVEL)
+		        .setSetlevel(setLevel).build().toByteArray();
+	}
+}
@@ -0,0 +1,108 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jebussystems.levelingglass.control.MeterType;
+import com.jebussystems.levelingglass.control.config.FixedMeterConfigSource;
+import com.jebussystems.levelingglass.control.records.LevelSnapshot;
+import com.jebussystems.levelingglass.simulator.V1DeviceSimulator;
+import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.MetricsRegistry;
+
+/**
+ * Has the simulator swallow a request and checks that ControlV1 gets going
+ * again. Requests are never resent, so the request timing out has to reset
+ * the link, after which the requests on the new connection complete and the
+ * levels flow.
+ */
+public class RequestTimeoutTest
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final int CHANNELS = 4;
+	private static final int RATE = 200;
+	private static final long TIMEOUT_IN_MILLIS = 200;
+	private static final long WAIT_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private V1DeviceSimulator simulator = null;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// tests
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void droppedRequestResetsTheLink() throws Exception
+	{
+		// there's no android logging off the device
+		LogWrapper.setLogLevel(LogWrapper.SILENT);
+
+		this.simulator = new V1DeviceSimulator(CHANNELS, RATE);
+		// the first SETLEVEL, after the channel query
+		this.simulator.setDropRequest(2);
+
+		ControlV1 control = ControlV1.getInstance();
+		control.setConfigSource(new FixedMeterConfigSource(MeterType.PPM,
+		        CHANNELS));
+		control.setRequestTimeout(TIMEOUT_IN_MILLIS);
+		RequestTracker tracker = (RequestTracker) MetricsRegistry
+		        .get("requests.control.v1");
+		control.getManager().connect(
+		        this.simulator.createPipeTransportFactory());
+
+		// a query plus a SETLEVEL per channel on each connection
+		long requests = 2 * (1 + CHANNELS);
+		long deadline = System.currentTimeMillis() + WAIT_IN_MILLIS;
+		while ((this.simulator.getRequestsReceived() < requests)
+		        || (0 != tracker.getNumOutstanding())
+		        || (ControlV1.State.CONNECTED != control.getState()))
+		{
+			assertTrue("link never came back, " + this.simulator + " "
+			        + tracker, System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		assertEquals(2, this.simulator.getSessionCount());
+		assertEquals(1, tracker.getNumTimedOut());
+		// everything but the dropped request was answered
+		assertEquals(requests - 1, tracker.getNumCompleted());
+
+		// and every channel's levels are coming in on the new connection
+		LevelSnapshot first = control.getLevelSnapshotStore().acquire();
+		long sequence = first.getSequence();
+		deadline = System.currentTimeMillis() + WAIT_IN_MILLIS;
+		while (control.getLevelSnapshotStore().acquire().getSequence() <= sequence)
+		{
+			assertTrue("no levels after the reset",
+			        System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		LevelSnapshot snapshot = control.getLevelSnapshotStore().acquire();
+		for (int channel = 0; channel < CHANNELS; channel++)
+		{
+			assertEquals("channel=" + channel, MeterType.PPM,
+			        snapshot.getType(channel));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		ControlV1.getInstance().getManager().disconnect();
+		if (null != this.simulator)
+		{
+			this.simulator.close();
+		}
+	}
+}
@@ -1,8 +1,9 @@
 package com.jebussystems.levelingglass.activity;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -12,6 +13,8 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -27,12 +30,14 @@ import android.widget.Toast;
 
 import com.jebussystems.levelingglass.R;
 import com.jebussystems.levelingglass.app.LevelingGlassApplication;
+import com.jebussystems.levelingglass.control.MeterType;
 import com.jebussystems.levelingglass.control.config.MeterConfig;
 import com.jebussystems.levelingglass.control.config.TrimConfig;
-import com.jebussystems.levelingglass.control.records.LevelDataRecord;
-import com.jebussystems.levelingglass.control.records.PeakDataRecord;
+import com.jebussystems.levelingglass.control.records.ChannelTable;
+import com.jebussystems.levelingglass.control.records.LevelSnapshot;
 import com.jebussystems.levelingglass.control.v1.ControlV1;
 import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.RefreshScheduler;
 import com.jebussystems.levelingglass.view.AudioLevelView;
 
 import flexjson.JSONSerializer;
@@ -56,6 +61,14 @@ public class MainActivity extends Activity {
 	private LevelingGlassApplication application;
 	private ControlEventListener listener;
 	private ListView listview = null;
+	private final RefreshScheduler refreshScheduler = new RefreshScheduler(
+			new Handler(Looper.getMainLooper()), new Runnable() {
+
+				@Override
+				public void run() {
+					updateLevelData();
+				}
+			});
 
 	// /////////////////////////////////////////////////////////////////////////
 	// constructors
@@ -111,6 +124,9 @@ public class MainActivity extends Activity {
 		// create the listener
 		this.listener = new ControlEventListener();
 
+		// level updates are coalesced into at most one refresh per frame
+		this.refreshScheduler.start();
+
 		// get the control object and add ourselves as a listener
 		ControlV1 control = ControlV1.getInstance();
 		control.addListener(listener);
@@ -127,6 +143,10 @@ public class MainActivity extends Activity {
 		// get the control object and add ourselves as a listener
 		ControlV1.getInstance().removeListener(listener);
 
+		// stop refreshing while we're not visible
+		this.refreshScheduler.stop();
+		LogWrapper.d(TAG, "level refreshes=", this.refreshScheduler);
+
 		LogWrapper.v(TAG, "MainActivity::onStop exit");
 	}
 
@@ -171,44 +191,50 @@ public class MainActivity extends Activity {
 	private void updateLevelData() {
 		// get the control object
 		ControlV1 control = ControlV1.getInstance();
-		// query the level data from the control object
-		Map<Integer, LevelDataRecord> records = control.getLevelDataRecord();
-		for (LevelDataRecord record : records.values()) {
-			synchronized (record) {
-				// find the layout view
-				View view = listview.getChildAt(record.getChannel() - 1);
-				if (null != view) {
-					// find the audio level view
-					AudioLevelView audiolevel = (AudioLevelView) view
-							.findViewById(R.id.audiolevelview);
-					// retrieve the current level
-					float level = record.getLevel();
-					// find the config
-					MeterConfig config = application.getConfigForChannel(record
-							.getChannel());
-
-					// see if this record provides a hold time
-					Float hold = null;
-					if (true == record instanceof PeakDataRecord) {
-						hold = ((PeakDataRecord) record).getHold();
-					}
-
-					// if this meter type supports trim then adjust
-					if (true == config instanceof TrimConfig) {
-						level += ((TrimConfig) config).getTrim();
-						if (null != hold) {
-							hold += ((TrimConfig) config).getTrim();
-						}
-					}
+		// grab the latest complete frame, this never blocks the reader thread
+		LevelSnapshot snapshot = control.getLevelSnapshotStore().acquire();
+		// the configs say which channels have meters, walk the views so
+		// nothing is allocated every frame
+		ChannelTable channels = control.getChannelTable();
+		int count = Math.min(listview.getChildCount(),
+				snapshot.getCapacity() - 1);
+		for (int position = 0; position < count; position++) {
+			int channel = position + 1;
+			// find the config, it's the same one the application holds
+			MeterConfig config = channels.getConfig(channel);
+			if ((null == config) || (MeterType.NONE == config.getMeterType())) {
+				continue;
+			}
+			// skip channels nothing has been decoded for yet
+			MeterType type = snapshot.getType(channel);
+			if (MeterType.NONE == type) {
+				continue;
+			}
+			// find the audio level view
+			AudioLevelView audiolevel = (AudioLevelView) listview.getChildAt(
+					position).findViewById(R.id.audiolevelview);
+			if (null == audiolevel) {
+				continue;
+			}
+			// retrieve the current level
+			float level = snapshot.getLevel(channel);
+
+			// see if this meter type provides a hold time, the snapshot's
+			// hold is NO_HOLD when it doesn't have one
+			float hold = AudioLevelView.NO_HOLD;
+			if ((MeterType.PPM == type) || (MeterType.DIGITALPEAK == type)) {
+				hold = snapshot.getHold(channel);
+			}
 
-					// populate the audio level view
-					audiolevel.setLevel(level);
-					audiolevel.setHold(hold);
-				} else {
-					LogWrapper.d(TAG, "no view found for channel=",
-							record.getChannel());
-				}
+			// if this meter type supports trim then adjust, this leaves
+			// NO_HOLD alone
+			if (true == config instanceof TrimConfig) {
+				level += ((TrimConfig) config).getTrim();
+				hold += ((TrimConfig) config).getTrim();
 			}
+
+			// populate the audio level view, it only redraws on a change
+			audiolevel.setLevel(level, hold);
 		}
 	}
 
@@ -298,21 +324,8 @@ public class MainActivity extends Activity {
 					.v(TAG,
 							"MainActivity::ControlEventListener::notifyLevelsUpdated enter",
 							"this=", this);
-			runOnUiThread(new Runnable() {
-
-				@Override
-				public void run() {
-					LogWrapper
-							.v(TAG,
-									"MainActivity::ControlEventListener::notifyLevelsUpdated::run enter",
-									"this=", this);
-					// run the common update logic
-					updateLevelData();
-					LogWrapper
-							.v(TAG,
-									"MainActivity::ControlEventListener::notifyLevelsUpdated::run exit");
-				}
-			});
+			// merged with any refresh that's already on its way
+			refreshScheduler.requestRefresh();
 			LogWrapper
 					.v(TAG,
 							"MainActivity::ControlEventListener::notifyLevelsUpdated exit");
@@ -489,6 +502,27 @@ public class MainActivity extends Activity {
 					}
 					break;
 
+				case KeyEvent.KEYCODE_MENU:
+					// write out the trace so it can be pulled off the device
+					String text;
+					try {
+						File file = application.dumpTrace();
+						text = String.format(getApplicationContext()
+								.getResources()
+								.getString(R.string.main_trace_toast),
+								file.getAbsolutePath());
+					} catch (IOException e) {
+						LogWrapper.e(TAG, "unable to dump trace, reason=",
+								e.getMessage());
+						text = getApplicationContext().getResources()
+								.getString(R.string.main_trace_failed_toast);
+					}
+					Toast.makeText(MainActivity.this, text, Toast.LENGTH_LONG)
+							.show();
+					// consume this event
+					result = true;
+					break;
+
 				case KeyEvent.KEYCODE_DPAD_LEFT:
 					// ignore this if we haven't selected an actual meter
 					if ((listview.getSelectedItemPosition() + 1) < adapter
@@ -127,7 +127,7 @@ public class PeerSelectionActivity extends Activity
 	{
 		LogWrapper.v(TAG, "PeerSelectionActivity::onActivityResult enter",
 		        "this=", this, "requestCode=", requestCode, "resultCode=",
-		        resultCode, "data=" + data);
+		        resultCode, "data=", data);
 		// reload the devices
 		loadDevices();
 
@@ -1,5 +1,9 @@
 package com.jebussystems.levelingglass.app;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -9,17 +13,22 @@ import android.app.Application;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.util.Log;
 
 import com.jebussystems.levelingglass.control.config.MeterConfig;
+import com.jebussystems.levelingglass.control.config.MeterConfigSource;
 import com.jebussystems.levelingglass.control.v1.ControlV1;
 import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.TraceRecorder;
+import com.jebussystems.levelingglass.util.TrackedObjectPool;
 
 import flexjson.JSONDeserializer;
 import flexjson.JSONException;
 import flexjson.JSONSerializer;
 
-public class LevelingGlassApplication extends Application
+public class LevelingGlassApplication extends Application implements
+        MeterConfigSource
 {
 	// /////////////////////////////////////////////////////////////////////////
 	// constants
@@ -75,6 +84,12 @@ public class LevelingGlassApplication extends Application
 		// store a reference to ourselves
 		instance = this;
 
+		// find out where leaked buffers came from in debug builds
+		if (0 != (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE))
+		{
+			TrackedObjectPool.setCaptureAllocationSites(true);
+		}
+
 		// create the preferences object
 		this.preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
 
@@ -123,8 +138,9 @@ public class LevelingGlassApplication extends Application
 			}
 		}
 
-		// set channel/level data
-		ControlV1.getInstance().notifyLevelConfigChange();
+		// the control layer reads its meter config from here, it's sent to
+		// the device once a connection comes up
+		ControlV1.getInstance().setConfigSource(this);
 
 		LogWrapper.v(TAG, "LevelingGlassApplication::onCreate exit");
 	}
@@ -156,16 +172,19 @@ public class LevelingGlassApplication extends Application
 		LogWrapper.v(TAG, "LevelingGlassApplication::setDevice exit");
 	}
 
+	@Override
 	public Set<Integer> getChannelSet()
 	{
 		return this.meterConfigMap.keySet();
 	}
 
+	@Override
 	public MeterConfig getConfigForChannel(int channel)
 	{
 		return this.meterConfigMap.get(channel);
 	}
 
+	@Override
 	public void setConfigForAllChannels(Set<MeterConfig> configSet)
 	{
 		for (MeterConfig config : configSet)
@@ -195,6 +214,39 @@ public class LevelingGlassApplication extends Application
 
 		LogWrapper.v(TAG, "LevelingGlassApplication::setLevelForChannel exit");
 	}
+
+	/**
+	 * Writes the trace recorder out to a file that can be pulled off the
+	 * device and decoded, and returns it.
+	 */
+	public File dumpTrace() throws IOException
+	{
+		LogWrapper.v(TAG, "LevelingGlassApplication::dumpTrace enter", "this=",
+		        this);
+
+		// prefer external storage, it can be pulled without root
+		File directory = getExternalFilesDir(null);
+		if (null == directory)
+		{
+			directory = getFilesDir();
+		}
+		File file = new File(directory, "trace-" + System.currentTimeMillis()
+		        + ".bin");
+		OutputStream stream = new FileOutputStream(file);
+		try
+		{
+			TraceRecorder.dump(stream);
+		}
+		finally
+		{
+			stream.close();
+		}
+
+		LogWrapper.v(TAG, "LevelingGlassApplication::dumpTrace exit", "file=",
+		        file);
+		return file;
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// protected methods
 	// /////////////////////////////////////////////////////////////////////////
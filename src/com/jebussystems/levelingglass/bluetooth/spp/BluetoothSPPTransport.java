@@ -0,0 +1,143 @@
+package com.jebussystems.levelingglass.bluetooth.spp;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.UUID;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+public class BluetoothSPPTransport implements SPPTransport
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "spp.transport.bluetooth";
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final BluetoothSocket socket;
+	private final ReadableByteChannel readChannel;
+	private final WritableByteChannel writeChannel;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public BluetoothSPPTransport(BluetoothSocket socket)
+	{
+		LogWrapper.v(TAG, "BluetoothSPPTransport::BluetoothSPPTransport enter",
+		        "this=", this, "socket=", socket);
+		this.socket = socket;
+		try
+		{
+			// the socket only offers streams so wrap them up as channels
+			this.readChannel = Channels.newChannel(socket.getInputStream());
+			this.writeChannel = Channels.newChannel(socket.getOutputStream());
+		}
+		catch (IOException e)
+		{
+			// never expect this
+			LogWrapper.wtf(TAG, "IOException, reason=", e.getMessage());
+			throw new IllegalStateException();
+		}
+		LogWrapper.v(TAG, "BluetoothSPPTransport::BluetoothSPPTransport exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public BluetoothDevice getDevice()
+	{
+		return socket.getRemoteDevice();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// SPPTransport implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void connect() throws IOException
+	{
+		socket.connect();
+		LogWrapper.d(TAG, "connected to device=", socket.getRemoteDevice());
+	}
+
+	@Override
+	public ReadableByteChannel getReadChannel()
+	{
+		return readChannel;
+	}
+
+	@Override
+	public WritableByteChannel getWriteChannel()
+	{
+		return writeChannel;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		socket.close();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "bluetooth:" + socket.getRemoteDevice();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// inner classes
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static class Factory implements SPPTransportFactory
+	{
+		private final BluetoothDevice device;
+		private final UUID uuid;
+
+		public Factory(BluetoothDevice device, UUID uuid)
+		{
+			this.device = device;
+			this.uuid = uuid;
+		}
+
+		public BluetoothDevice getDevice()
+		{
+			return device;
+		}
+
+		@Override
+		public SPPTransport createTransport() throws IOException
+		{
+			return new BluetoothSPPTransport(
+			        device.createInsecureRfcommSocketToServiceRecord(uuid));
+		}
+
+		@Override
+		public String toString()
+		{
+			return "bluetooth:" + device;
+		}
+	}
+}
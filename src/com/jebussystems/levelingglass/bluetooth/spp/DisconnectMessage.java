@@ -1,95 +0,0 @@
-package com.jebussystems.levelingglass.bluetooth.spp;
-
-import org.apache.commons.pool.ObjectPool;
-import org.apache.commons.pool.impl.StackObjectPool;
-
-import com.jebussystems.levelingglass.util.LogWrapper;
-import com.jebussystems.levelingglass.util.PoolableMessageFactory;
-
-public class DisconnectMessage extends SPPMessage
-{
-	// /////////////////////////////////////////////////////////////////////////
-	// constants
-	// /////////////////////////////////////////////////////////////////////////
-
-	private static final String TAG = "bluetooth.spp.disconnectmessage";
-
-	// /////////////////////////////////////////////////////////////////////////
-	// types
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// class variables
-	// /////////////////////////////////////////////////////////////////////////
-	private static final ObjectPool<DisconnectMessage> pool = new StackObjectPool<DisconnectMessage>(
-	        new Factory());
-
-	// /////////////////////////////////////////////////////////////////////////
-	// object variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// static initialization
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// constructors
-	// /////////////////////////////////////////////////////////////////////////
-
-	private DisconnectMessage()
-	{
-		LogWrapper.v(TAG, "DisconnectMessage::DisconnectMessage enter",
-		        "this=", this);
-		LogWrapper.v(TAG, "DisconnectMessage::DisconnectMessage exit");
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// public methods
-	// /////////////////////////////////////////////////////////////////////////
-
-	public static ObjectPool<DisconnectMessage> getPoolInstance()
-	{
-		return pool;
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// PoolableMessage implementation
-	// /////////////////////////////////////////////////////////////////////////
-
-	@SuppressWarnings("unchecked")
-	@Override
-	public ObjectPool<DisconnectMessage> getPool()
-	{
-		return pool;
-	}
-
-	@Override
-	public void process()
-	{
-		LogWrapper.v(TAG, "DisconnectMessage::process enter", "this=", this);
-		// fire the state machine event
-		getManager().getStateMachineInstance().evaluate(
-		        SPPManager.Event.DISCONNECT, null);
-		LogWrapper.v(TAG, "DisconnectMessage::run exit");
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// inner classes
-	// /////////////////////////////////////////////////////////////////////////
-
-	private static class Factory extends
-	        PoolableMessageFactory<DisconnectMessage>
-	{
-
-		@Override
-		public DisconnectMessage makeObject() throws Exception
-		{
-			LogWrapper.v(TAG, "DisconnectMessage::Factory::makeObject enter",
-			        "this=", this);
-			DisconnectMessage message = new DisconnectMessage();
-			LogWrapper.v(TAG, "DisconnectMessage::Factory::makeObject exit",
-			        "message=", message);
-			return message;
-		}
-	}
-}
@@ -1,17 +1,20 @@
 package com.jebussystems.levelingglass.bluetooth.spp;
 
-import android.bluetooth.BluetoothDevice;
-
-import com.jebussystems.levelingglass.util.LogWrapper;
-
-public class ReconnectMessage implements Runnable
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * In-process transport built from a pair of NIO pipes. createPair() returns
+ * both ends of a link; whatever one end writes the other end reads.
+ */
+public class PipeSPPTransport implements SPPTransport
 {
 	// /////////////////////////////////////////////////////////////////////////
 	// constants
 	// /////////////////////////////////////////////////////////////////////////
 
-	private static final String TAG = "bluetooth.spp.reconnectmessage";
-
 	// /////////////////////////////////////////////////////////////////////////
 	// types
 	// /////////////////////////////////////////////////////////////////////////
@@ -24,8 +27,8 @@ public class ReconnectMessage implements Runnable
 	// object variables
 	// /////////////////////////////////////////////////////////////////////////
 
-	private final SPPManager manager;
-	private BluetoothDevice device = null;
+	private final Pipe.SourceChannel readChannel;
+	private final Pipe.SinkChannel writeChannel;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// static initialization
@@ -35,44 +38,53 @@ public class ReconnectMessage implements Runnable
 	// constructors
 	// /////////////////////////////////////////////////////////////////////////
 
-	public ReconnectMessage(SPPManager manager)
+	private PipeSPPTransport(Pipe.SourceChannel readChannel,
+	        Pipe.SinkChannel writeChannel)
 	{
-		LogWrapper.v(TAG, "ReconnectMessage::ReconnectMessage enter", "this=",
-		        this);
-		this.manager = manager;
-		LogWrapper.v(TAG, "ReconnectMessage::ReconnectMessage exit");
+		this.readChannel = readChannel;
+		this.writeChannel = writeChannel;
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
 	// public methods
 	// /////////////////////////////////////////////////////////////////////////
 
-	public void init(BluetoothDevice device)
+	public static PipeSPPTransport[] createPair() throws IOException
 	{
-		this.device = device;
-	}
-
-	public void release()
-	{
-		this.device = null;
+		Pipe forward = Pipe.open();
+		Pipe reverse = Pipe.open();
+		return new PipeSPPTransport[] {
+		        new PipeSPPTransport(reverse.source(), forward.sink()),
+		        new PipeSPPTransport(forward.source(), reverse.sink()) };
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
-	// Runnable implementation
+	// SPPTransport implementation
 	// /////////////////////////////////////////////////////////////////////////
 
 	@Override
-	public void run()
+	public void connect() throws IOException
 	{
-		LogWrapper.v(TAG, "ReconnectMessage::process enter", "this=", this);
-		// fire the state machine event
-		manager.getStateMachineInstance().evaluate(SPPManager.Event.TIMER,
-		        device);
-		LogWrapper.v(TAG, "ReconnectMessage::run exit");
+		// nothing to do, the pipes are connected when created
 	}
 
-	// /////////////////////////////////////////////////////////////////////////
-	// inner classes
-	// /////////////////////////////////////////////////////////////////////////
+	@Override
+	public ReadableByteChannel getReadChannel()
+	{
+		return readChannel;
+	}
 
+	@Override
+	public WritableByteChannel getWriteChannel()
+	{
+		return writeChannel;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// closing our sink makes the other end see end of stream
+		writeChannel.close();
+		readChannel.close();
+	}
 }
@@ -1,18 +1,13 @@
 package com.jebussystems.levelingglass.bluetooth.spp;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.apache.commons.pool.BasePoolableObjectFactory;
-import org.apache.commons.pool.ObjectPool;
-import org.apache.commons.pool.impl.StackObjectPool;
-
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 
 import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.TraceRecorder;
+import com.jebussystems.levelingglass.util.TrackedObjectPool;
 
 public class SPPConnection
 {
@@ -21,7 +16,13 @@ public class SPPConnection
 	// /////////////////////////////////////////////////////////////////////////
 	private static final String TAG = "spp.connection";
 
-	private static final int BUFFER_SIZE = 128;
+	// buffer size classes, smallest first
+	private static final int[] BUFFER_SIZES = { 128, 512, 2048 };
+	// per size class, past this a request fails straight away and a frame is
+	// read into the decoder's fallback buffer
+	private static final int MAX_ACTIVE_BUFFERS = 128;
+	// per size class, what's kept once a burst has drained
+	private static final int MAX_IDLE_BUFFERS = 16;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// types
@@ -38,8 +39,10 @@ public class SPPConnection
 	// class variables
 	// /////////////////////////////////////////////////////////////////////////
 
-	private static final ObjectPool<ByteBuffer> pool = new StackObjectPool<ByteBuffer>(
-	        new ByteBufferFactory());
+	@SuppressWarnings("unchecked")
+	private static final TrackedObjectPool<ByteBuffer>[] pools = new TrackedObjectPool[BUFFER_SIZES.length];
+	private static final int traceSource = TraceRecorder
+	        .registerSource("spp.connection");
 
 	// /////////////////////////////////////////////////////////////////////////
 	// object variables
@@ -47,36 +50,48 @@ public class SPPConnection
 
 	private final Listener listener;
 	private final SPPMessageHandler messageHandler;
-	private final BluetoothSocket socket;
-	private final DataOutputStream writeStream;
-	private final DataInputStream readStream;
+	private final SPPTransport transport;
+	private final SPPFrameEncoder encoder;
+	private final SPPFrameDecoder decoder;
 	private final Thread thread;
 
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	static
+	{
+		for (int i = 0; i < BUFFER_SIZES.length; i++)
+		{
+			pools[i] = new TrackedObjectPool<ByteBuffer>("spp.buffers."
+			        + BUFFER_SIZES[i], new ByteBufferFactory(BUFFER_SIZES[i]));
+			// borrowers include the event loop, which must never block
+			pools[i].setMaxActive(MAX_ACTIVE_BUFFERS,
+			        TrackedObjectPool.ExhaustedPolicy.DROP);
+			pools[i].setMaxIdle(MAX_IDLE_BUFFERS);
+		}
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// constructors
 	// /////////////////////////////////////////////////////////////////////////
 
-	public SPPConnection(Listener listener, BluetoothSocket socket,
-	        SPPMessageHandler messageHandler)
+	public SPPConnection(Listener listener, SPPTransport transport,
+	        SPPMessageHandler messageHandler, int maxBatchSize)
 	{
 		LogWrapper.v(TAG, "SPPConnection::SPPConnection enter", "this=", this,
-		        "listener=", listener, "socket=", socket, "messagHandler=",
-		        messageHandler);
+		        "listener=", listener, "transport=", transport,
+		        "messagHandler=", messageHandler, "maxBatchSize=",
+		        maxBatchSize);
 
-		// store data and allocate the channels
+		// store data and setup the framing on top of the channels
 		this.listener = listener;
-		this.socket = socket;
-		try
-		{
-			this.writeStream = new DataOutputStream(socket.getOutputStream());
-			this.readStream = new DataInputStream(socket.getInputStream());
-		}
-		catch (IOException e)
-		{
-			// never expect this
-			LogWrapper.wtf(TAG, "IOException, reason=", e.getMessage());
-			throw new IllegalStateException();
-		}
+		this.transport = transport;
+		// requests are collected in the encoder until flushed so that a burst
+		// goes out as a single write
+		this.encoder = new SPPFrameEncoder(transport.getWriteChannel(),
+		        maxBatchSize);
+		this.decoder = new SPPFrameDecoder(transport.getReadChannel());
 		this.messageHandler = messageHandler;
 		// spawn a thread to do the connection and read from the channel
 		this.thread = new Thread(new ReadThread());
@@ -89,9 +104,19 @@ public class SPPConnection
 	// public methods
 	// /////////////////////////////////////////////////////////////////////////
 
-	public static ObjectPool<ByteBuffer> getBufferPool()
+	public static TrackedObjectPool<ByteBuffer> getBufferPool()
 	{
-		return pool;
+		return pools[0];
+	}
+
+	/**
+	 * Returns the pool of the smallest buffer size class that can hold length
+	 * bytes, or null if the length is bigger than every class.
+	 */
+	public static TrackedObjectPool<ByteBuffer> getBufferPool(int length)
+	{
+		int sizeClass = findSizeClass(length);
+		return (sizeClass < 0) ? null : pools[sizeClass];
 	}
 
 	public void sendRequest(ByteBuffer request) throws IOException
@@ -99,32 +124,58 @@ public class SPPConnection
 		LogWrapper.v(TAG, "SPPConnection::sendRequest enter", "this=", this,
 		        "request=", request);
 
-		// write the size of the request
-		this.writeStream.writeShort(request.limit());
-		// write the request
-		this.writeStream.write(request.array(), 0, request.limit());
-		// flush
-		this.writeStream.flush();
-		// release
+		TraceRecorder.record(TraceRecorder.FRAME_QUEUED, traceSource,
+		        request.remaining());
 		try
-        {
-	        getBufferPool().returnObject(request);
-        }
-        catch (Exception e)
-        {
-        	LogWrapper.wtf(TAG, e.getMessage());
-        }
+		{
+			// the request stays buffered until the next flush
+			this.encoder.writeFrame(request);
+		}
+		finally
+		{
+			// the buffer is ours to release whether or not it was sent
+			releaseBuffer(request);
+		}
 
 		LogWrapper.v(TAG, "SPPConnection::sendRequest exit");
 	}
 
+	public void flush() throws IOException
+	{
+		if (true == LogWrapper.isVerboseEnabled())
+		{
+			LogWrapper.v(TAG, "SPPConnection::flush enter", "this=", this,
+			        "pendingBytes=", encoder.getPendingBytes());
+		}
+		// push the whole batch out in one go
+		TraceRecorder.record(TraceRecorder.FLUSH, traceSource,
+		        encoder.getPendingBytes());
+		this.encoder.flush();
+		LogWrapper.v(TAG, "SPPConnection::flush exit");
+	}
+
+	public SPPFrameDecoder getDecoder()
+	{
+		return decoder;
+	}
+
+	public int getPendingBytes()
+	{
+		return encoder.getPendingBytes();
+	}
+
+	public SPPTransport getTransport()
+	{
+		return transport;
+	}
+
 	public void close()
 	{
 		LogWrapper.v(TAG, "SPPConnection::close enter", "this=", this);
-		// close the socket
+		// close the transport
 		try
 		{
-			this.socket.close();
+			this.transport.close();
 		}
 		catch (IOException e)
 		{
@@ -140,18 +191,52 @@ public class SPPConnection
 			LogWrapper.d(TAG, "thread interrupted in join, message=",
 			        e.getMessage());
 		}
+		// report how the decoder + buffer pools fared over the life of the
+		// connection
+		LogWrapper.d(TAG, "decoder ", decoder);
+		for (TrackedObjectPool<ByteBuffer> pool : pools)
+		{
+			LogWrapper.d(TAG, "buffer pool=", pool);
+		}
 		LogWrapper.v(TAG, "SPPConnection::close exit");
 	}
 
-	public BluetoothDevice getDevice()
+	public static void releaseBuffer(ByteBuffer buffer)
 	{
-		return socket.getRemoteDevice();
+		// buffers go back to the pool for their size class
+		int sizeClass = findSizeClass(buffer.capacity());
+		if ((sizeClass < 0) || (buffer.capacity() != BUFFER_SIZES[sizeClass]))
+		{
+			LogWrapper.wtf(TAG, "buffer not from any pool, capacity=",
+			        buffer.capacity());
+			return;
+		}
+		try
+		{
+			pools[sizeClass].returnObject(buffer);
+		}
+		catch (Exception e)
+		{
+			LogWrapper.wtf(TAG, e.getMessage());
+		}
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
 	// private methods
 	// /////////////////////////////////////////////////////////////////////////
 
+	private static int findSizeClass(int length)
+	{
+		for (int i = 0; i < BUFFER_SIZES.length; i++)
+		{
+			if (length <= BUFFER_SIZES[i])
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// inner classes
 	// /////////////////////////////////////////////////////////////////////////
@@ -166,10 +251,10 @@ public class SPPConnection
 			try
 			{
 				// actually try to connect
-				socket.connect();
+				transport.connect();
 
-				LogWrapper.d(TAG, "connected to device=",
-				        socket.getRemoteDevice());
+				LogWrapper.d(TAG, "connected over transport=", transport);
+				TraceRecorder.record(TraceRecorder.CONNECTED, traceSource);
 
 				// notify the listener
 				listener.connected(SPPConnection.this);
@@ -177,31 +262,34 @@ public class SPPConnection
 				// read messages forever
 				while (true)
 				{
-					// read the size of the message
-					short length = readStream.readShort();
-					// allocate a buffer and read the message in
+					// read the next complete message - stream errors end the
+					// connection
+					ByteBuffer buffer = decoder.readFrame();
+					TraceRecorder.record(TraceRecorder.FRAME_RECEIVED,
+					        traceSource, buffer.remaining());
 					try
 					{
-						ByteBuffer buffer = getBufferPool().borrowObject();
-						assert buffer.capacity() >= length;
-						readStream.read(buffer.array(), 0, length);
-						// indicate how much data is available
-						buffer.limit(length);
 						// call the handler
 						messageHandler.handleSPPMessage(buffer);
 					}
-					catch (Exception e)
+					catch (RuntimeException e)
 					{
 						LogWrapper.wtf(TAG, e.getMessage());
 					}
+					finally
+					{
+						// the handler is done with the buffer so recycle it
+						decoder.releaseFrame(buffer);
+					}
 				}
 			}
 			catch (IOException e)
 			{
-				LogWrapper.w(TAG, "IO exception from socket, message=",
+				LogWrapper.w(TAG, "IO exception from transport, message=",
 				        e.getMessage());
+				TraceRecorder.record(TraceRecorder.DISCONNECTED, traceSource);
 				// notify the listener we've disconnected
-				// this will result in the socket being closed in a different
+				// this will result in the transport being closed in a different
 				// thread
 				listener.disconnected(SPPConnection.this);
 			}
@@ -212,6 +300,12 @@ public class SPPConnection
 	private static class ByteBufferFactory extends
 	        BasePoolableObjectFactory<ByteBuffer>
 	{
+		private final int size;
+
+		public ByteBufferFactory(int size)
+		{
+			this.size = size;
+		}
 
 		@Override
 		public ByteBuffer makeObject() throws Exception
@@ -219,7 +313,7 @@ public class SPPConnection
 			LogWrapper.v(TAG,
 			        "SPPConnection::ByteBufferFactory::makeObject entry",
 			        "this=", this);
-			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			ByteBuffer buffer = ByteBuffer.allocate(size);
 			LogWrapper.v(TAG,
 			        "SPPConnection::ByteBufferFactory::makeObject exit",
 			        "buffer=", buffer);
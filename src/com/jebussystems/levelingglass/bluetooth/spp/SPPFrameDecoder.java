@@ -0,0 +1,195 @@
+package com.jebussystems.levelingglass.bluetooth.spp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.NoSuchElementException;
+
+import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.TrackedObjectPool;
+
+/**
+ * Reads length prefixed frames off the SPP stream. A frame is always read in
+ * full no matter how many reads it takes, so a partial read can never throw
+ * the stream out of sync. Frames are placed in a buffer from the smallest size
+ * class that fits. Anything bigger than the largest class, or arriving while
+ * its class is exhausted, goes into a fallback buffer owned by the decoder.
+ */
+public class SPPFrameDecoder
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "spp.framedecoder";
+
+	private static final int HEADER_SIZE = 2;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	private ByteBuffer oversizeBuffer = null;
+
+	// only ever written by the reading thread
+	private volatile long frames = 0;
+	private volatile long shortReads = 0;
+	private volatile long oversizeFrames = 0;
+	private volatile long exhaustedFrames = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public SPPFrameDecoder(ReadableByteChannel channel)
+	{
+		LogWrapper.v(TAG, "SPPFrameDecoder::SPPFrameDecoder enter", "this=",
+		        this, "channel=", channel);
+		this.channel = channel;
+		LogWrapper.v(TAG, "SPPFrameDecoder::SPPFrameDecoder exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Blocks until a complete frame has been read. The returned buffer must be
+	 * handed back through releaseFrame() once the caller is done with it.
+	 */
+	public ByteBuffer readFrame() throws IOException
+	{
+		// read the size of the frame
+		header.clear();
+		readFully(header);
+		int length = header.getShort(0) & 0xffff;
+		// find somewhere to put it
+		ByteBuffer buffer = allocateBuffer(length);
+		// indicate how much data is expected
+		buffer.limit(length);
+		try
+		{
+			readFully(buffer);
+		}
+		catch (IOException e)
+		{
+			releaseFrame(buffer);
+			throw e;
+		}
+		// hand the frame over ready to read
+		buffer.flip();
+		frames++;
+		return buffer;
+	}
+
+	public void releaseFrame(ByteBuffer buffer)
+	{
+		// the fallback buffer is kept for the next oversize frame
+		if (buffer != oversizeBuffer)
+		{
+			SPPConnection.releaseBuffer(buffer);
+		}
+	}
+
+	public long getFrameCount()
+	{
+		return frames;
+	}
+
+	public long getShortReadCount()
+	{
+		return shortReads;
+	}
+
+	public long getOversizeFrameCount()
+	{
+		return oversizeFrames;
+	}
+
+	public long getExhaustedFrameCount()
+	{
+		return exhaustedFrames;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "frames=" + frames + " shortReads=" + shortReads
+		        + " oversizeFrames=" + oversizeFrames + " exhaustedFrames="
+		        + exhaustedFrames;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void readFully(ByteBuffer buffer) throws IOException
+	{
+		// keep reading until the buffer is full
+		while (true)
+		{
+			if (channel.read(buffer) < 0)
+			{
+				throw new EOFException("stream closed mid frame, missing="
+				        + buffer.remaining());
+			}
+			if (false == buffer.hasRemaining())
+			{
+				return;
+			}
+			shortReads++;
+		}
+	}
+
+	private ByteBuffer allocateBuffer(int length)
+	{
+		TrackedObjectPool<ByteBuffer> pool = SPPConnection
+		        .getBufferPool(length);
+		if (null != pool)
+		{
+			try
+			{
+				ByteBuffer buffer = pool.borrowObject();
+				buffer.clear();
+				return buffer;
+			}
+			catch (NoSuchElementException e)
+			{
+				// the frame still has to be read to keep the stream in sync
+				exhaustedFrames++;
+				LogWrapper.w(TAG, "buffer pool exhausted, length=", length);
+			}
+			catch (Exception e)
+			{
+				LogWrapper.wtf(TAG, e.getMessage());
+			}
+		}
+		else
+		{
+			oversizeFrames++;
+			LogWrapper.w(TAG, "oversize frame, length=", length);
+		}
+		// use (and grow if needed) the fallback buffer
+		if ((null == oversizeBuffer) || (oversizeBuffer.capacity() < length))
+		{
+			oversizeBuffer = ByteBuffer.allocate(length);
+		}
+		oversizeBuffer.clear();
+		return oversizeBuffer;
+	}
+}
@@ -0,0 +1,121 @@
+package com.jebussystems.levelingglass.bluetooth.spp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * Writes length prefixed frames onto the SPP channel. Frames are collected in a
+ * batch buffer and only go out on flush(), or when the next frame would not
+ * fit, so a burst of requests costs one channel write.
+ */
+public class SPPFrameEncoder
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "spp.frameencoder";
+
+	private static final int HEADER_SIZE = 2;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer batch;
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public SPPFrameEncoder(WritableByteChannel channel, int maxBatchSize)
+	{
+		LogWrapper.v(TAG, "SPPFrameEncoder::SPPFrameEncoder enter", "this=",
+		        this, "channel=", channel, "maxBatchSize=", maxBatchSize);
+		this.channel = channel;
+		this.batch = ByteBuffer.allocate(maxBatchSize);
+		LogWrapper.v(TAG, "SPPFrameEncoder::SPPFrameEncoder exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Adds the frame held between the buffer's position and limit to the
+	 * batch. The buffer is not retained.
+	 */
+	public void writeFrame(ByteBuffer frame) throws IOException
+	{
+		int length = frame.remaining();
+		// make room if this frame doesn't fit behind what's already queued
+		if (batch.remaining() < HEADER_SIZE + length)
+		{
+			flush();
+		}
+		if (batch.remaining() >= HEADER_SIZE + length)
+		{
+			batch.putShort((short) length);
+			batch.put(frame.array(), frame.arrayOffset() + frame.position(),
+			        length);
+		}
+		else
+		{
+			// bigger than a whole batch so send it on its own
+			header.clear();
+			header.putShort((short) length);
+			header.flip();
+			writeFully(header);
+			int position = frame.position();
+			writeFully(frame);
+			frame.position(position);
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		batch.flip();
+		try
+		{
+			writeFully(batch);
+		}
+		finally
+		{
+			batch.clear();
+		}
+	}
+
+	public int getPendingBytes()
+	{
+		return batch.position();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void writeFully(ByteBuffer buffer) throws IOException
+	{
+		while (true == buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+	}
+}
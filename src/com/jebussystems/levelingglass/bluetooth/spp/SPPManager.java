@@ -5,24 +5,22 @@ import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import android.annotation.TargetApi;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.os.Build;
 import android.os.ParcelUuid;
 
+import com.jebussystems.levelingglass.util.EventLoop;
 import com.jebussystems.levelingglass.util.LogWrapper;
-import com.jebussystems.levelingglass.util.PoolableMessageManager;
+import com.jebussystems.levelingglass.util.MetricsRegistry;
 import com.jebussystems.levelingglass.util.StateMachine;
+import com.jebussystems.levelingglass.util.StateMachineMetrics;
 
 public class SPPManager implements SPPConnection.Listener,
-        StateMachine.StateChangeListener<SPPState>
+        StateMachine.StateChangeListener<SPPState>, EventLoop.Dispatcher
 {
 	// /////////////////////////////////////////////////////////////////////////
 	// constants
@@ -30,6 +28,9 @@ public class SPPManager implements SPPConnection.Listener,
 	private static final String TAG = "spp.manager";
 
 	private static final int RETRY_TIMER_IN_SECS = 10;
+	private static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+	private static final int DEFAULT_LINGER_IN_MILLIS = 0;
+	private static final int NO_TIMER = -1;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// types
@@ -42,7 +43,7 @@ public class SPPManager implements SPPConnection.Listener,
 
 	enum Event
 	{
-		CONNECT, DISCONNECT, NOTIFY_CONNECTED, NOTIFY_DISCONNECTED, SENDREQUEST, TIMER
+		CONNECT, DISCONNECT, RESET, NOTIFY_CONNECTED, NOTIFY_DISCONNECTED, SENDREQUEST, FLUSH, TIMER
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -51,22 +52,24 @@ public class SPPManager implements SPPConnection.Listener,
 
 	private static final StateMachine<SPPState, Event, SPPManager> stateMachine = new StateMachine<SPPState, SPPManager.Event, SPPManager>(
 	        SPPManager.Event.class, SPPState.DISCONNECTED);
-	private static final PoolableMessageManager messageManager = new PoolableMessageManager();
 
 	// /////////////////////////////////////////////////////////////////////////
 	// object variables
 	// /////////////////////////////////////////////////////////////////////////
 
 	private final UUID uuid;
-	private final ScheduledExecutorService executor = Executors
-	        .newSingleThreadScheduledExecutor();
-	private final ReconnectMessage reconnectMessage = new ReconnectMessage(this);
+	private final EventLoop eventLoop;
 	private final StateMachine<SPPState, Event, SPPManager>.Instance stateMachineInstance = stateMachine
 	        .createInstance(this);
 	private SPPMessageHandler messageHandler = null;
 	private final Collection<SPPStateListener> listeners = new LinkedList<SPPStateListener>();
 	private SPPConnection connection = null;
-	private Future<?> timerHandler = null;
+	private SPPTransportFactory transportFactory = null;
+	// only touched on the event loop
+	private int reconnectTimer = NO_TIMER;
+	private boolean flushScheduled = false;
+	private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private volatile int lingerInMillis = DEFAULT_LINGER_IN_MILLIS;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// static initialization
@@ -78,52 +81,91 @@ public class SPPManager implements SPPConnection.Listener,
 		        new ConnectHandler());
 		stateMachine.addHandler(SPPState.DISCONNECTED, Event.DISCONNECT,
 		        stateMachine.createDoNothingHandler());
+		stateMachine.addHandler(SPPState.DISCONNECTED, Event.RESET,
+		        stateMachine.createDoNothingHandler());
 		stateMachine.addHandler(SPPState.DISCONNECTED, Event.SENDREQUEST,
+		        new DiscardMessageHandler());
+		stateMachine.addHandler(SPPState.DISCONNECTED, Event.FLUSH,
 		        stateMachine.createDoNothingHandler());
 		stateMachine.addHandler(SPPState.CONNECTING, Event.CONNECT,
 		        stateMachine.createDoNothingHandler());
+		stateMachine.addHandler(SPPState.CONNECTING, Event.SENDREQUEST,
+		        new DiscardMessageHandler());
+		stateMachine.addHandler(SPPState.CONNECTING, Event.FLUSH,
+		        stateMachine.createDoNothingHandler());
 		stateMachine.addHandler(SPPState.CONNECTING, Event.NOTIFY_CONNECTED,
 		        new NotifyConnectedHandler());
 		stateMachine.addHandler(SPPState.CONNECTING, Event.NOTIFY_DISCONNECTED,
 		        new NotifyDisconnectedHandler());
 		stateMachine.addHandler(SPPState.CONNECTING, Event.DISCONNECT,
 		        new ForceDisconnectHandler());
+		stateMachine.addHandler(SPPState.CONNECTING, Event.RESET,
+		        new ResetHandler());
 		stateMachine.addHandler(SPPState.CONNECTED, Event.DISCONNECT,
 		        new ForceDisconnectHandler());
+		stateMachine.addHandler(SPPState.CONNECTED, Event.RESET,
+		        new ResetHandler());
 		stateMachine.addHandler(SPPState.CONNECTED, Event.NOTIFY_DISCONNECTED,
 		        new NotifyDisconnectedHandler());
 		stateMachine.addHandler(SPPState.CONNECTED, Event.SENDREQUEST,
 		        new MessageHandler());
+		stateMachine.addHandler(SPPState.CONNECTED, Event.FLUSH,
+		        new FlushHandler());
 		stateMachine.addHandler(SPPState.RECONNECTING, Event.TIMER,
 		        new ReconnectHandler());
 		stateMachine.addHandler(SPPState.RECONNECTING, Event.DISCONNECT,
 		        new CancelReconnectHandler());
-
-		// setup the message pools
-		messageManager.registerPool(ConnectMessage.class,
-		        ConnectMessage.getPoolInstance());
-		messageManager.registerPool(DisconnectMessage.class,
-		        DisconnectMessage.getPoolInstance());
-		messageManager.registerPool(NotifyConnectedMessage.class,
-		        NotifyConnectedMessage.getPoolInstance());
-		messageManager.registerPool(NotifyDisconnectedMessage.class,
-		        NotifyDisconnectedMessage.getPoolInstance());
-		messageManager.registerPool(SendRequestMessage.class,
-		        SendRequestMessage.getPoolInstance());
+		// already on the way to a new connection
+		stateMachine.addHandler(SPPState.RECONNECTING, Event.RESET,
+		        stateMachine.createDoNothingHandler());
+		stateMachine.addHandler(SPPState.RECONNECTING, Event.SENDREQUEST,
+		        new DiscardMessageHandler());
+		stateMachine.addHandler(SPPState.RECONNECTING, Event.FLUSH,
+		        stateMachine.createDoNothingHandler());
+		// left over from a connection or timer that has since been dropped
+		StateMachine.Handler<SPPState, SPPManager> unexpected = stateMachine
+		        .createUnexpectedEventHandler();
+		stateMachine.addHandler(SPPState.DISCONNECTED,
+		        Event.NOTIFY_CONNECTED, unexpected);
+		stateMachine.addHandler(SPPState.DISCONNECTED,
+		        Event.NOTIFY_DISCONNECTED, unexpected);
+		stateMachine.addHandler(SPPState.DISCONNECTED, Event.TIMER,
+		        unexpected);
+		stateMachine.addHandler(SPPState.CONNECTING, Event.TIMER, unexpected);
+		stateMachine.addHandler(SPPState.CONNECTED, Event.CONNECT, unexpected);
+		stateMachine.addHandler(SPPState.CONNECTED, Event.NOTIFY_CONNECTED,
+		        unexpected);
+		stateMachine.addHandler(SPPState.CONNECTED, Event.TIMER, unexpected);
+		stateMachine.addHandler(SPPState.RECONNECTING, Event.CONNECT,
+		        unexpected);
+		stateMachine.addHandler(SPPState.RECONNECTING,
+		        Event.NOTIFY_CONNECTED, unexpected);
+		stateMachine.addHandler(SPPState.RECONNECTING,
+		        Event.NOTIFY_DISCONNECTED, unexpected);
+		stateMachine.build();
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
 	// constructors
 	// /////////////////////////////////////////////////////////////////////////
 
-	public SPPManager(UUID uuid)
+	/**
+	 * All events are handled on the given loop, which may be shared with the
+	 * layer above.
+	 */
+	public SPPManager(UUID uuid, EventLoop eventLoop)
 	{
-		LogWrapper.v(TAG, "SPPManager::SPPManager enter", "this=", this);
+		LogWrapper.v(TAG, "SPPManager::SPPManager enter", "this=", this,
+		        "eventLoop=", eventLoop);
 
 		// store the UUID
 		this.uuid = uuid;
+		this.eventLoop = eventLoop;
 		// add ourselves as a state machine listener
 		this.stateMachineInstance.setListener(this);
+		// make the connect/reconnect times available
+		MetricsRegistry.register("spp.manager.states",
+		        this.stateMachineInstance.getMetrics());
 
 		LogWrapper.v(TAG, "SPPManager::SPPManager exit");
 	}
@@ -137,6 +179,23 @@ public class SPPManager implements SPPConnection.Listener,
 		this.messageHandler = messageHandler;
 	}
 
+	/**
+	 * Controls how outgoing requests are coalesced. Requests are buffered until
+	 * maxBatchSize bytes are pending or lingerInMillis has passed since the
+	 * first unflushed request. A linger of 0 flushes as soon as the requests
+	 * already queued on the event loop have been written. The batch size takes
+	 * effect on the next connection.
+	 */
+	public void setWriteBatching(int maxBatchSize, int lingerInMillis)
+	{
+		LogWrapper.v(TAG, "SPPManager::setWriteBatching enter", "this=", this,
+		        "maxBatchSize=", maxBatchSize, "lingerInMillis=",
+		        lingerInMillis);
+		this.maxBatchSize = maxBatchSize;
+		this.lingerInMillis = lingerInMillis;
+		LogWrapper.v(TAG, "SPPManager::setWriteBatching exit");
+	}
+
 	public boolean connect(BluetoothDevice device)
 	{
 		LogWrapper.v(TAG, "SPPManager::connect enter", "this=", this,
@@ -153,14 +212,7 @@ public class SPPManager implements SPPConnection.Listener,
 			if ((Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
 			        || (true == checkDeviceForCompatibility(device)))
 			{
-				// make sure we're disconnected
-				disconnect();
-				// allocate + populate the connection message
-				ConnectMessage message = messageManager
-				        .allocateMessage(ConnectMessage.class);
-				message.init(this, device);
-				// queue it to run
-				this.executor.execute(message);
+				connect(new BluetoothSPPTransport.Factory(device, this.uuid));
 				// success
 				result = true;
 			}
@@ -180,25 +232,59 @@ public class SPPManager implements SPPConnection.Listener,
 		return result;
 	}
 
+	/**
+	 * Connects over any transport, skipping the bluetooth pairing and service
+	 * checks. Used to talk to a device simulator off the phone.
+	 */
+	public void connect(SPPTransportFactory transportFactory)
+	{
+		LogWrapper.v(TAG, "SPPManager::connect enter", "this=", this,
+		        "transportFactory=", transportFactory);
+		// make sure we're disconnected
+		disconnect();
+		// queue the connect
+		this.eventLoop.post(this, Event.CONNECT, transportFactory);
+		LogWrapper.v(TAG, "SPPManager::connect exit");
+	}
+
 	public void disconnect()
 	{
 		LogWrapper.v(TAG, "SPPManager::disconnect enter", "this=", this);
-		// send the disconnect message
-		DisconnectMessage message = messageManager
-		        .allocateMessage(DisconnectMessage.class);
-		this.executor.execute(message);
+		// queue the disconnect
+		this.eventLoop.post(this, Event.DISCONNECT, null);
 		LogWrapper.v(TAG, "SPPManager::disconnect exit");
 	}
 
-	public void sendRequest(ByteBuffer request)
+	/**
+	 * Drops the connection and connects to the same device again straight
+	 * away, for when the layer above has lost track of what the device is
+	 * doing. Does nothing unless connected or connecting.
+	 */
+	public void reset()
+	{
+		LogWrapper.v(TAG, "SPPManager::reset enter", "this=", this);
+		// queue the reset
+		this.eventLoop.post(this, Event.RESET, null);
+		LogWrapper.v(TAG, "SPPManager::reset exit");
+	}
+
+	/**
+	 * Queues a pooled buffer to be written, the buffer is released once it
+	 * has been. Returns false if the event loop is full, in which case the
+	 * buffer has already been released and nothing is sent.
+	 */
+	public boolean sendRequest(ByteBuffer request)
 	{
 		LogWrapper.v(TAG, "SPPManager::sendRequest enter", "this=", this,
 		        "request=", request);
-		SendRequestMessage message = messageManager
-		        .allocateMessage(SendRequestMessage.class);
-		message.init(this, request);
-		this.executor.execute(message);
-		LogWrapper.v(TAG, "SPPManager::sendRequest exit");
+		boolean result = this.eventLoop.post(this, Event.SENDREQUEST, request);
+		if (false == result)
+		{
+			LogWrapper.e(TAG, "event loop full, dropping request");
+			SPPConnection.releaseBuffer(request);
+		}
+		LogWrapper.v(TAG, "SPPManager::sendRequest exit", "result=", result);
+		return result;
 	}
 
 	public void addSPPStateListener(SPPStateListener listener)
@@ -228,6 +314,11 @@ public class SPPManager implements SPPConnection.Listener,
 		return stateMachineInstance.getState();
 	}
 
+	public StateMachineMetrics<SPPState, Event> getStateMetrics()
+	{
+		return stateMachineInstance.getMetrics();
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// SPPConnection.Listener methods
 	// /////////////////////////////////////////////////////////////////////////
@@ -237,25 +328,34 @@ public class SPPManager implements SPPConnection.Listener,
 	{
 		LogWrapper.v(TAG, "SPPManager::connected enter", "this=", this,
 		        "connection=", connection);
-		NotifyConnectedMessage message = messageManager
-		        .allocateMessage(NotifyConnectedMessage.class);
-		message.init(this, connection);
-		this.executor.execute(message);
+		this.eventLoop.post(this, Event.NOTIFY_CONNECTED, connection);
 		LogWrapper.v(TAG, "SPPManager::connected exit");
 	}
 
 	@Override
 	public void disconnected(SPPConnection connection)
 	{
-		LogWrapper.v(TAG, "SPPManager::disconnected enter connection="
-		        + connection);
-		NotifyDisconnectedMessage message = messageManager
-		        .allocateMessage(NotifyDisconnectedMessage.class);
-		message.init(this, connection);
-		this.executor.execute(message);
+		LogWrapper.v(TAG, "SPPManager::disconnected enter", "this=", this,
+		        "connection=", connection);
+		this.eventLoop.post(this, Event.NOTIFY_DISCONNECTED, connection);
 		LogWrapper.v(TAG, "SPPManager::disconnected exit");
 	}
 
+	// /////////////////////////////////////////////////////////////////////////
+	// EventLoop.Dispatcher methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void dispatchEvent(Enum<?> event, Object data)
+	{
+		if (Event.FLUSH == event)
+		{
+			// any request written after this point needs a new flush
+			this.flushScheduled = false;
+		}
+		this.stateMachineInstance.evaluate((Event) event, data);
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// StateMachine.StateChangeListener methods
 	// /////////////////////////////////////////////////////////////////////////
@@ -292,6 +392,34 @@ public class SPPManager implements SPPConnection.Listener,
 	// private methods
 	// /////////////////////////////////////////////////////////////////////////
 
+	private void scheduleFlush()
+	{
+		// a full batch goes out straight away
+		if (this.connection.getPendingBytes() >= this.maxBatchSize)
+		{
+			if (true == this.eventLoop.post(this, Event.FLUSH, null))
+			{
+				this.flushScheduled = true;
+			}
+			return;
+		}
+		// otherwise one flush covers everything written until it runs
+		if (false == this.flushScheduled)
+		{
+			if (0 == this.lingerInMillis)
+			{
+				this.flushScheduled = this.eventLoop.post(this, Event.FLUSH,
+				        null);
+			}
+			else
+			{
+				this.eventLoop.schedule(this, Event.FLUSH, null,
+				        this.lingerInMillis);
+				this.flushScheduled = true;
+			}
+		}
+	}
+
 	@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
 	private boolean checkDeviceForCompatibility(BluetoothDevice device)
 	{
@@ -319,17 +447,17 @@ public class SPPManager implements SPPConnection.Listener,
 			        "this=", this, "object=", object, "data=", data);
 			try
 			{
-				// create the socket
-				BluetoothSocket socket = ((BluetoothDevice) data)
-				        .createInsecureRfcommSocketToServiceRecord(object.uuid);
+				// remember who we're talking to for reconnects
+				object.transportFactory = (SPPTransportFactory) data;
 				// create the connection
-				object.connection = new SPPConnection(object, socket,
-				        object.messageHandler);
+				object.connection = new SPPConnection(object,
+				        object.transportFactory.createTransport(),
+				        object.messageHandler, object.maxBatchSize);
 
 			}
 			catch (IOException e)
 			{
-				LogWrapper.e(TAG, "IOException when creating socket, reason="
+				LogWrapper.e(TAG, "IOException when creating transport, reason="
 				        + e.getMessage());
 				return null;
 			}
@@ -387,14 +515,19 @@ public class SPPManager implements SPPConnection.Listener,
 			LogWrapper.v(TAG,
 			        "SPPManager::NotifyDisconnectedHandler::handleEvent enter",
 			        "this=", this, "object=", object, "data=", data);
+			if (data != object.connection)
+			{
+				// the connection a reset closed, we've already moved on
+				LogWrapper.d(TAG, "ignoring disconnect from old connection");
+				return null;
+			}
 			// close the connection
 			object.connection.close();
 			object.connection = null;
-			// start the reconnect timer using the 'static' reconnect message
-			object.reconnectMessage.init(((SPPConnection) data).getDevice());
-			object.timerHandler = object.executor.schedule(
-			        object.reconnectMessage, RETRY_TIMER_IN_SECS,
-			        TimeUnit.SECONDS);
+			// start the reconnect timer
+			object.reconnectTimer = object.eventLoop.schedule(object,
+			        Event.TIMER, object.transportFactory,
+			        TimeUnit.SECONDS.toMillis(RETRY_TIMER_IN_SECS));
 			// now we're reconnecting
 			LogWrapper.v(TAG,
 			        "SPPManager::NotifyDisconnectedHandler::handleEvent exit");
@@ -402,6 +535,26 @@ public class SPPManager implements SPPConnection.Listener,
 		}
 	}
 
+	private static class ResetHandler implements
+	        StateMachine.Handler<SPPState, SPPManager>
+	{
+		@Override
+		public SPPState handleEvent(SPPManager object, Object data)
+		{
+			LogWrapper.v(TAG, "SPPManager::ResetHandler::handleEvent enter",
+			        "this=", this, "object=", object, "data=", data);
+			// close the connection
+			object.connection.close();
+			object.connection = null;
+			// the device is still there, so don't wait to reconnect
+			object.reconnectTimer = object.eventLoop.schedule(object,
+			        Event.TIMER, object.transportFactory, 0);
+			// now we're reconnecting
+			LogWrapper.v(TAG, "SPPManager::ResetHandler::handleEvent exit");
+			return SPPState.RECONNECTING;
+		}
+	}
+
 	private static class ReconnectHandler implements
 	        StateMachine.Handler<SPPState, SPPManager>
 	{
@@ -412,19 +565,17 @@ public class SPPManager implements SPPConnection.Listener,
 			        "SPPManager::ReconnectHandler::handleEvent enter", "this=",
 			        this, "object=", object, "data=", data);
 			// no longer need the timer handle
-			object.timerHandler = null;
+			object.reconnectTimer = NO_TIMER;
 			try
 			{
-				// create the socket
-				BluetoothSocket socket = ((BluetoothDevice) data)
-				        .createInsecureRfcommSocketToServiceRecord(object.uuid);
 				// trigger a connection
-				object.connection = new SPPConnection(object, socket,
-				        object.messageHandler);
+				object.connection = new SPPConnection(object,
+				        ((SPPTransportFactory) data).createTransport(),
+				        object.messageHandler, object.maxBatchSize);
 			}
 			catch (IOException e)
 			{
-				LogWrapper.e(TAG, "IOException when creating socket, reason="
+				LogWrapper.e(TAG, "IOException when creating transport, reason="
 				        + e.getMessage());
 				return SPPState.DISCONNECTED;
 			}
@@ -445,8 +596,8 @@ public class SPPManager implements SPPConnection.Listener,
 			        "SPPManager::CancelReconnectHandler::handleEvent enter",
 			        "this=", this, "object=", object, "data=", data);
 			// cancel the timer
-			object.timerHandler.cancel(false);
-			object.timerHandler = null;
+			object.eventLoop.cancel(object.reconnectTimer);
+			object.reconnectTimer = NO_TIMER;
 
 			// now disconnected
 			LogWrapper.v(TAG,
@@ -469,6 +620,8 @@ public class SPPManager implements SPPConnection.Listener,
 			try
 			{
 				object.connection.sendRequest((ByteBuffer) data);
+				// make sure the batch gets flushed
+				object.scheduleFlush();
 			}
 			catch (IOException e)
 			{
@@ -479,6 +632,52 @@ public class SPPManager implements SPPConnection.Listener,
 			}
 			LogWrapper.v(TAG, "SPPManager::MessageHandler::handleEvent exit",
 			        "result=", result);
+			return result;
+		}
+	}
+
+	private static class FlushHandler implements
+	        StateMachine.Handler<SPPState, SPPManager>
+	{
+		@Override
+		public SPPState handleEvent(SPPManager object, Object data)
+		{
+			LogWrapper.v(TAG, "SPPManager::FlushHandler::handleEvent enter",
+			        "this=", this, "object=", object, "data=", data);
+			// assume we don't want to change state
+			SPPState result = null;
+
+			try
+			{
+				object.connection.flush();
+			}
+			catch (IOException e)
+			{
+				// couldn't send so disconnect
+				object.connection.close();
+				object.connection = null;
+				result = SPPState.DISCONNECTED;
+			}
+			LogWrapper.v(TAG, "SPPManager::FlushHandler::handleEvent exit",
+			        "result=", result);
+			return result;
+		}
+	}
+
+	private static class DiscardMessageHandler implements
+	        StateMachine.Handler<SPPState, SPPManager>
+	{
+		@Override
+		public SPPState handleEvent(SPPManager object, Object data)
+		{
+			LogWrapper.v(TAG,
+			        "SPPManager::DiscardMessageHandler::handleEvent enter",
+			        "this=", this, "object=", object, "data=", data);
+			// no connection to send on so hand the buffer straight back
+			LogWrapper.d(TAG, "not connected, discarding request");
+			SPPConnection.releaseBuffer((ByteBuffer) data);
+			LogWrapper.v(TAG,
+			        "SPPManager::DiscardMessageHandler::handleEvent exit");
 			return null;
 		}
 	}
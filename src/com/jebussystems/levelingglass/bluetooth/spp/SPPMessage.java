@@ -1,70 +0,0 @@
-package com.jebussystems.levelingglass.bluetooth.spp;
-
-import com.jebussystems.levelingglass.util.LogWrapper;
-import com.jebussystems.levelingglass.util.PoolableMessage;
-
-public abstract class SPPMessage extends PoolableMessage
-{
-	// /////////////////////////////////////////////////////////////////////////
-	// constants
-	// /////////////////////////////////////////////////////////////////////////
-
-	private static final String TAG = "bluetooth.spp.message";
-
-	// /////////////////////////////////////////////////////////////////////////
-	// types
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// class variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// object variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	private SPPManager manager = null;
-
-	// /////////////////////////////////////////////////////////////////////////
-	// static initialization
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// constructors
-	// /////////////////////////////////////////////////////////////////////////
-
-	protected SPPMessage()
-	{
-		LogWrapper
-		        .v(TAG, "SPPMessage::SPPMessage enter", "this=", this);
-		LogWrapper.v(TAG, "SPPMessage::SPPMessage exit");
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// public methods
-	// /////////////////////////////////////////////////////////////////////////
-
-	protected void init(SPPManager manager)
-	{
-		this.manager = manager;
-	}
-
-	@Override
-	public void release()
-	{
-		this.manager = null;
-	}
-	
-	// /////////////////////////////////////////////////////////////////////////
-	// protected methods
-	// /////////////////////////////////////////////////////////////////////////
-
-	protected SPPManager getManager()
-	{
-		return manager;
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// inner classes
-	// /////////////////////////////////////////////////////////////////////////
-}
@@ -0,0 +1,41 @@
+package com.jebussystems.levelingglass.bluetooth.spp;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The byte pipe underneath an SPPConnection. The connection only does framing
+ * and buffer pooling on top of these channels, so the same code runs over an
+ * RFCOMM socket on the device or an in-process pipe or TCP socket on a plain
+ * JVM.
+ */
+public interface SPPTransport
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Establishes the link. Called from the connection's read thread and may
+	 * block.
+	 */
+	void connect() throws IOException;
+
+	ReadableByteChannel getReadChannel();
+
+	WritableByteChannel getWriteChannel();
+
+	/**
+	 * Closes the link. Must unblock a read in progress on another thread.
+	 */
+	void close() throws IOException;
+}
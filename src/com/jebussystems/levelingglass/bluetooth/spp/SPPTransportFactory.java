@@ -0,0 +1,24 @@
+package com.jebussystems.levelingglass.bluetooth.spp;
+
+import java.io.IOException;
+
+/**
+ * Makes the transport for each connection attempt. SPPManager keeps hold of
+ * the factory so a reconnect gets a fresh transport to the same peer.
+ */
+public interface SPPTransportFactory
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	SPPTransport createTransport() throws IOException;
+}
@@ -0,0 +1,131 @@
+package com.jebussystems.levelingglass.bluetooth.spp;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * Carries the SPP byte stream over TCP, for talking to a device simulator or
+ * measuring the framing code off the device.
+ */
+public class SocketSPPTransport implements SPPTransport
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "spp.transport.socket";
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final SocketAddress address;
+	private final SocketChannel channel;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public SocketSPPTransport(SocketAddress address) throws IOException
+	{
+		LogWrapper.v(TAG, "SocketSPPTransport::SocketSPPTransport enter",
+		        "this=", this, "address=", address);
+		this.address = address;
+		this.channel = SocketChannel.open();
+		LogWrapper.v(TAG, "SocketSPPTransport::SocketSPPTransport exit");
+	}
+
+	/**
+	 * Wraps a channel that is already connected, such as one accepted by a
+	 * server.
+	 */
+	public SocketSPPTransport(SocketChannel channel)
+	{
+		this.address = null;
+		this.channel = channel;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// SPPTransport implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void connect() throws IOException
+	{
+		if (null != address)
+		{
+			channel.connect(address);
+		}
+		// frames are already batched so don't let nagle delay them
+		channel.socket().setTcpNoDelay(true);
+		LogWrapper.d(TAG, "connected to address=",
+		        channel.socket().getRemoteSocketAddress());
+	}
+
+	@Override
+	public ReadableByteChannel getReadChannel()
+	{
+		return channel;
+	}
+
+	@Override
+	public WritableByteChannel getWriteChannel()
+	{
+		return channel;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "socket:" + address;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// inner classes
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static class Factory implements SPPTransportFactory
+	{
+		private final SocketAddress address;
+
+		public Factory(SocketAddress address)
+		{
+			this.address = address;
+		}
+
+		@Override
+		public SPPTransport createTransport() throws IOException
+		{
+			return new SocketSPPTransport(address);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "socket:" + address;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.jebussystems.levelingglass.control.config;
+
+import java.util.Set;
+
+/**
+ * Where the control layer gets the per channel meter config from. The
+ * application provides it on the device; benchmarks and tools supply their
+ * own.
+ */
+public interface MeterConfigSource
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	Set<Integer> getChannelSet();
+
+	MeterConfig getConfigForChannel(int channel);
+
+	void setConfigForAllChannels(Set<MeterConfig> configSet);
+}
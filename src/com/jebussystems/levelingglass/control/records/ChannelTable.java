@@ -0,0 +1,146 @@
+package com.jebussystems.levelingglass.control.records;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.jebussystems.levelingglass.control.config.MeterConfig;
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * The config for each channel, looked up by channel number without boxing.
+ * Channel numbers are remapped to dense slots in the order they're first
+ * seen, so a device with a few scattered channels only uses the first few
+ * slots and walking the table never touches empty ones. Finding a channel's
+ * config is a load of its slot followed by a load of the config. The meter
+ * values themselves are in the LevelSnapshotStore.
+ * <p>
+ * A channel keeps its slot for the life of the table, clear() only empties
+ * it, so a reader holding a slot never ends up looking at another channel.
+ * There must be only one writer thread, any number of threads may read.
+ */
+public class ChannelTable
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "control.records.channeltable";
+
+	// slot of a channel that isn't in the table
+	public static final int NO_SLOT = -1;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// slot for each channel number, NO_SLOT when it hasn't been seen
+	private final AtomicIntegerArray slots;
+	// by slot
+	private final AtomicReferenceArray<MeterConfig> configs;
+	// owned by the writer
+	private int used = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Holds channels numbered 0 up to but not including maxChannels.
+	 */
+	public ChannelTable(int maxChannels)
+	{
+		LogWrapper.v(TAG, "ChannelTable::ChannelTable enter", "this=", this,
+		        "maxChannels=", maxChannels);
+		this.slots = new AtomicIntegerArray(maxChannels);
+		for (int channel = 0; channel < maxChannels; channel++)
+		{
+			this.slots.set(channel, NO_SLOT);
+		}
+		this.configs = new AtomicReferenceArray<MeterConfig>(maxChannels);
+		LogWrapper.v(TAG, "ChannelTable::ChannelTable exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public int getMaxChannels()
+	{
+		return slots.length();
+	}
+
+	/**
+	 * Returns NO_SLOT if the channel has never been stored.
+	 */
+	public int getSlot(int channel)
+	{
+		if ((channel < 0) || (channel >= this.slots.length()))
+		{
+			return NO_SLOT;
+		}
+		return this.slots.get(channel);
+	}
+
+	public MeterConfig getConfig(int channel)
+	{
+		return getConfigAt(getSlot(channel));
+	}
+
+	public MeterConfig getConfigAt(int slot)
+	{
+		return (NO_SLOT == slot) ? null : this.configs.get(slot);
+	}
+
+	/**
+	 * Stores the config for its channel. Returns false if the channel is out
+	 * of range. Writer only.
+	 */
+	public boolean put(MeterConfig config)
+	{
+		int channel = config.getChannel();
+		int slot = getSlot(channel);
+		if (NO_SLOT == slot)
+		{
+			if ((channel < 0) || (channel >= this.slots.length()))
+			{
+				LogWrapper.w(TAG, "channel out of range, channel=", channel);
+				return false;
+			}
+			// there's a slot for every channel number so this can't run out
+			slot = this.used++;
+		}
+		// fill the slot before readers can find it
+		this.configs.set(slot, config);
+		this.slots.set(channel, slot);
+		return true;
+	}
+
+	/**
+	 * Empties every slot, channels keep the slots they have. Writer only.
+	 */
+	public void clear()
+	{
+		for (int slot = 0; slot < this.used; slot++)
+		{
+			this.configs.set(slot, null);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "channels=" + used;
+	}
+}
@@ -1,60 +0,0 @@
-package com.jebussystems.levelingglass.control.records;
-
-import com.jebussystems.levelingglass.control.MeterType;
-
-public abstract class LevelDataRecord
-{
-	// /////////////////////////////////////////////////////////////////////////
-	// constants
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// types
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// class variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// object variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	private final int channel;
-	private float level;
-
-	// /////////////////////////////////////////////////////////////////////////
-	// static initialization
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// constructors
-	// /////////////////////////////////////////////////////////////////////////
-
-	protected LevelDataRecord(int channel)
-	{
-		this.channel = channel;
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// public methods
-	// /////////////////////////////////////////////////////////////////////////
-
-	public int getChannel()
-	{
-		return channel;
-	}
-
-	public float getLevel()
-	{
-		return level;
-	}
-
-	public void setLevel(float level)
-	{
-		this.level = level;
-	}
-
-	public abstract MeterType getType();
-
-}
@@ -0,0 +1,128 @@
+package com.jebussystems.levelingglass.control.records;
+
+import java.util.Arrays;
+
+import com.jebussystems.levelingglass.control.MeterType;
+
+/**
+ * One consistent set of meter values for every channel, indexed by channel
+ * number. Handed out by a LevelSnapshotStore and only valid until the reader
+ * asks the store for the next one.
+ * <p>
+ * The frame is held as columns, one array each for the level, the hold and
+ * the meter type of every channel, so the decoder fills it with plain array
+ * stores and a whole frame is copied with one System.arraycopy per column.
+ */
+public class LevelSnapshot
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Hold value of a channel whose meter doesn't have one. Negative infinity
+	 * so adding a trim to it leaves it alone.
+	 */
+	public static final float NO_HOLD = Float.NEGATIVE_INFINITY;
+
+	// type column value of a channel nothing has been decoded for
+	private static final byte NO_TYPE = (byte) MeterType.NONE.ordinal();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// values() copies the array each call
+	private static final MeterType[] meterTypes = MeterType.values();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final float[] levels;
+	private final float[] holds;
+	// MeterType ordinals
+	private final byte[] types;
+	// read without exchanging the snapshot so it has to be volatile
+	private volatile long sequence = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	LevelSnapshot(int capacity)
+	{
+		this.levels = new float[capacity];
+		this.holds = new float[capacity];
+		Arrays.fill(this.holds, NO_HOLD);
+		this.types = new byte[capacity];
+		Arrays.fill(this.types, NO_TYPE);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public int getCapacity()
+	{
+		return levels.length;
+	}
+
+	public float getLevel(int channel)
+	{
+		return levels[channel];
+	}
+
+	/**
+	 * The hold for the channel, or {@link #NO_HOLD}.
+	 */
+	public float getHold(int channel)
+	{
+		return holds[channel];
+	}
+
+	/**
+	 * The type of meter the channel's values came from, NONE if nothing has
+	 * been decoded for it.
+	 */
+	public MeterType getType(int channel)
+	{
+		return meterTypes[types[channel]];
+	}
+
+	/**
+	 * How many times the store had been published when this snapshot was
+	 * taken. Two snapshots with the same sequence hold the same values.
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// package protected methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	void set(int channel, MeterType type, float level, float hold)
+	{
+		levels[channel] = level;
+		holds[channel] = hold;
+		types[channel] = (byte) type.ordinal();
+	}
+
+	void copyFrom(LevelSnapshot source, long sequence)
+	{
+		System.arraycopy(source.levels, 0, levels, 0, levels.length);
+		System.arraycopy(source.holds, 0, holds, 0, holds.length);
+		System.arraycopy(source.types, 0, types, 0, types.length);
+		this.sequence = sequence;
+	}
+}
@@ -0,0 +1,168 @@
+package com.jebussystems.levelingglass.control.records;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.jebussystems.levelingglass.control.MeterType;
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * Hands meter values from the thread decoding notifications to the thread
+ * drawing them without either one blocking. The writer updates channels in
+ * its own arrays and publishes them as a whole; the reader always gets a
+ * complete frame, never a mix of two.
+ * <p>
+ * Three snapshots are rotated: the writer fills the back one, the reader
+ * draws from the front one and the middle one holds the latest published
+ * frame. Publishing and acquiring each swap with the middle snapshot in a
+ * single atomic exchange. There must be only one writer thread and one reader
+ * thread.
+ * <p>
+ * Any thread may ask for a channel to be cleared. The writer applies it to
+ * the frame it's filling the next time it calls applyClears().
+ */
+public class LevelSnapshotStore
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "control.records.snapshotstore";
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// owned by the writer, the frame being filled in
+	private final LevelSnapshot working;
+	private long sequence = 0;
+	private LevelSnapshot back;
+	// shared
+	private final AtomicReference<LevelSnapshot> middle;
+	// owned by the reader
+	private LevelSnapshot front;
+	// 1 for each channel waiting to be cleared, set by any thread
+	private final AtomicIntegerArray clears;
+	// set after any of the clears, so the writer can skip looking
+	private final AtomicBoolean clearsPending = new AtomicBoolean();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public LevelSnapshotStore(int capacity)
+	{
+		LogWrapper.v(TAG, "LevelSnapshotStore::LevelSnapshotStore enter",
+		        "this=", this, "capacity=", capacity);
+		this.working = new LevelSnapshot(capacity);
+		this.back = new LevelSnapshot(capacity);
+		this.middle = new AtomicReference<LevelSnapshot>(new LevelSnapshot(
+		        capacity));
+		this.front = new LevelSnapshot(capacity);
+		this.clears = new AtomicIntegerArray(capacity);
+		LogWrapper.v(TAG, "LevelSnapshotStore::LevelSnapshotStore exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public int getCapacity()
+	{
+		return working.getCapacity();
+	}
+
+	/**
+	 * Writer only. The value is not visible to the reader until the next
+	 * {@link #publish()}. Pass {@link LevelSnapshot#NO_HOLD} for meters
+	 * without a hold.
+	 */
+	public boolean setLevel(int channel, MeterType type, float level,
+	        float hold)
+	{
+		if ((channel < 0) || (channel >= working.getCapacity()))
+		{
+			LogWrapper.w(TAG, "channel out of range, channel=", channel);
+			return false;
+		}
+		working.set(channel, type, level, hold);
+		return true;
+	}
+
+	/**
+	 * Any thread. Resets the channel to NONE with no hold once the writer
+	 * next calls {@link #applyClears()}, so it stays empty from the
+	 * following frame until it's set again.
+	 */
+	public void clearLevel(int channel)
+	{
+		if ((channel < 0) || (channel >= working.getCapacity()))
+		{
+			LogWrapper.w(TAG, "channel out of range, channel=", channel);
+			return;
+		}
+		clears.set(channel, 1);
+		clearsPending.set(true);
+	}
+
+	/**
+	 * Writer only. Carries out any clears asked for so far. Call it before
+	 * setting a frame's values so a clear can't wipe one that came after it.
+	 */
+	public void applyClears()
+	{
+		if (false == clearsPending.get())
+		{
+			return;
+		}
+		// a clear asked for from here on sets it again
+		clearsPending.set(false);
+		for (int channel = 0; channel < clears.length(); channel++)
+		{
+			if (0 != clears.getAndSet(channel, 0))
+			{
+				working.set(channel, MeterType.NONE, 0.0f,
+				        LevelSnapshot.NO_HOLD);
+			}
+		}
+	}
+
+	/**
+	 * Writer only. Makes everything set so far visible to the reader as one
+	 * frame, and returns the frame's sequence number.
+	 */
+	public long publish()
+	{
+		back.copyFrom(working, ++sequence);
+		back = middle.getAndSet(back);
+		return sequence;
+	}
+
+	/**
+	 * Reader only. Returns the most recently published frame. The snapshot
+	 * stays valid, and unchanged, until the next call.
+	 */
+	public LevelSnapshot acquire()
+	{
+		// only swap when there is something newer, otherwise we'd hand the
+		// reader back an older frame
+		if (middle.get().getSequence() > front.getSequence())
+		{
+			front = middle.getAndSet(front);
+		}
+		return front;
+	}
+}
@@ -1,50 +0,0 @@
-package com.jebussystems.levelingglass.control.records;
-
-import com.jebussystems.levelingglass.control.MeterType;
-
-public class PPMDataRecord extends PeakDataRecord
-{
-	// /////////////////////////////////////////////////////////////////////////
-	// constants
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// types
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// class variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// object variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// static initialization
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// constructors
-	// /////////////////////////////////////////////////////////////////////////
-
-	public PPMDataRecord(int channel)
-	{
-		super(channel);
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// LeveLDataRecord implementation
-	// /////////////////////////////////////////////////////////////////////////
-
-	@Override
-	public MeterType getType()
-	{
-		return MeterType.PPM;
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// public methods
-	// /////////////////////////////////////////////////////////////////////////
-
-}
@@ -1,45 +0,0 @@
-package com.jebussystems.levelingglass.control.records;
-
-import com.jebussystems.levelingglass.control.MeterType;
-
-public class VUDataRecord extends LevelDataRecord
-{
-	// /////////////////////////////////////////////////////////////////////////
-	// constants
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// types
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// class variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// object variables
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// static initialization
-	// /////////////////////////////////////////////////////////////////////////
-
-	// /////////////////////////////////////////////////////////////////////////
-	// constructors
-	// /////////////////////////////////////////////////////////////////////////
-
-	public VUDataRecord(int channel)
-	{
-		super(channel);
-	}
-
-	// /////////////////////////////////////////////////////////////////////////
-	// LeveLDataRecord implementation
-	// /////////////////////////////////////////////////////////////////////////
-
-	@Override
-	public MeterType getType()
-	{
-		return MeterType.VU;
-	}
-}
@@ -1,23 +1,26 @@
 package com.jebussystems.levelingglass.control.v1;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.pool.ObjectPool;
 
 import v1.V1;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.jebussystems.levelingglass.app.LevelingGlassApplication;
+import com.google.protobuf.WireFormat;
 import com.jebussystems.levelingglass.bluetooth.spp.SPPConnection;
 import com.jebussystems.levelingglass.bluetooth.spp.SPPManager;
 import com.jebussystems.levelingglass.bluetooth.spp.SPPMessageHandler;
@@ -27,15 +30,44 @@ import com.jebussystems.levelingglass.control.MeterType;
 import com.jebussystems.levelingglass.control.config.HoldTimeConfig;
 import com.jebussystems.levelingglass.control.config.MeterConfig;
 import com.jebussystems.levelingglass.control.config.MeterConfigFactory;
-import com.jebussystems.levelingglass.control.records.LevelDataRecord;
-import com.jebussystems.levelingglass.control.records.LevelDataRecordFactory;
-import com.jebussystems.levelingglass.control.records.PeakDataRecord;
+import com.jebussystems.levelingglass.control.config.MeterConfigSource;
+import com.jebussystems.levelingglass.control.records.ChannelTable;
+import com.jebussystems.levelingglass.control.records.LevelSnapshot;
+import com.jebussystems.levelingglass.control.records.LevelSnapshotStore;
 import com.jebussystems.levelingglass.util.EnumMapper;
+import com.jebussystems.levelingglass.util.EventLoop;
+import com.jebussystems.levelingglass.util.Histogram;
 import com.jebussystems.levelingglass.util.LogWrapper;
-import com.jebussystems.levelingglass.util.PoolableMessageManager;
+import com.jebussystems.levelingglass.util.MetricsRegistry;
 import com.jebussystems.levelingglass.util.StateMachine;
-
-public class ControlV1 implements SPPMessageHandler, SPPStateListener {
+import com.jebussystems.levelingglass.util.StateMachineMetrics;
+import com.jebussystems.levelingglass.util.TraceRecorder;
+
+/**
+ * Talks version 1 of the protocol to the device, in two lanes.
+ * <p>
+ * The data lane handles level notifications inline on the SPP read thread:
+ * records are decoded straight into the level snapshot store and published
+ * without taking a lock or handing anything to another thread.
+ * <p>
+ * The control lane is the event loop shared with the SPP layer. Connection
+ * state changes, channel query responses and config changes are all
+ * serialized through it and run the state machine there.
+ * <p>
+ * The lanes meet at the per channel level type the data lane accepts. The
+ * control lane closes a channel before asking the device for a different
+ * type, and the read thread opens it again with the acknowledged type as it
+ * handles the SETLEVEL response, before it reads the next frame. Since the
+ * device answers in order, a record is only published if it was sent after
+ * the device agreed to send that type, and a record from before a change is
+ * never mixed into a frame after it.
+ * <p>
+ * A SETLEVEL the device turns down leaves it with the config it had, so the
+ * control lane puts the channel back to the last acknowledged config and
+ * opens the lane again with that type. The connection is kept.
+ */
+public class ControlV1 implements SPPMessageHandler, SPPStateListener,
+		EventLoop.Dispatcher, RequestTracker.Transmitter {
 
 	// /////////////////////////////////////////////////////////////////////////
 	// type definitions
@@ -51,9 +83,19 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		CONNECTING, SYNCHRONIZING, CONNECTED
 	}
 
+	/**
+	 * Selects how inbound SPP frames are decoded. PARSED builds the full
+	 * protobuf object graph, DIRECT streams level records straight out of the
+	 * frame buffer into the level snapshot store and only falls back to a
+	 * full parse for responses.
+	 */
+	public enum DecodeMode {
+		PARSED, DIRECT
+	}
+
 	enum Event {
 
-		CONNECTED, DISCONNECTED, QUERY_CHANNELS_RESPONSE, LEVEL_CHANGE
+		CONNECTED, DISCONNECTED, QUERY_CHANNELS_RESPONSE, LEVEL_CHANGE, LEVEL_REJECTED
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -63,6 +105,34 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 	private static final String TAG = "control.v1";
 	public static final UUID SERVER_UUID = UUID
 			.fromString("c20d3a1a-6c0d-11e2-aa09-000c298ce626");
+	// highest channel number we keep level values for, plus one
+	public static final int MAX_CHANNELS = 64;
+	// hold time we asked for on a meter that doesn't have one
+	private static final int NO_HOLDTIME = RequestEncoder.NO_HOLDTIME;
+
+	// wire tags used by the direct decoder
+	private static final int TAG_RESPONSE = makeTag(
+			V1.ResponseOrNotification.RESPONSE_FIELD_NUMBER,
+			WireFormat.WIRETYPE_LENGTH_DELIMITED);
+	private static final int TAG_NOTIFICATION = makeTag(
+			V1.ResponseOrNotification.NOTIFICATION_FIELD_NUMBER,
+			WireFormat.WIRETYPE_LENGTH_DELIMITED);
+	private static final int TAG_NOTIFICATION_LEVEL = makeTag(
+			V1.Notification.LEVEL_FIELD_NUMBER,
+			WireFormat.WIRETYPE_LENGTH_DELIMITED);
+	private static final int TAG_LEVEL_RECORDS = makeTag(
+			V1.LevelNotification.RECORDS_FIELD_NUMBER,
+			WireFormat.WIRETYPE_LENGTH_DELIMITED);
+	private static final int TAG_RECORD_TYPE = makeTag(
+			V1.LevelRecord.TYPE_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT);
+	private static final int TAG_RECORD_CHANNEL = makeTag(
+			V1.LevelRecord.CHANNEL_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT);
+	private static final int TAG_RECORD_PEAK = makeTag(
+			V1.LevelRecord.PEAKINDB_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32);
+	private static final int TAG_RECORD_HOLD = makeTag(
+			V1.LevelRecord.HOLDINDB_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32);
+	private static final int TAG_RECORD_VU = makeTag(
+			V1.LevelRecord.VUINUNITS_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32);
 
 	// /////////////////////////////////////////////////////////////////////////
 	// class variables
@@ -72,7 +142,8 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 			MeterType.class, V1.LevelType.class);
 	private static final StateMachine<State, Event, ControlV1> stateMachine = new StateMachine<State, Event, ControlV1>(
 			Event.class, State.CONNECTING);
-	private static final PoolableMessageManager messageManager = new PoolableMessageManager();
+	private static final int traceSource = TraceRecorder
+			.registerSource("control.v1");
 
 	// singleton
 	private static ControlV1 instance = null;
@@ -81,14 +152,57 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 	// object variables
 	// /////////////////////////////////////////////////////////////////////////
 
-	private final ScheduledExecutorService executor = Executors
-			.newSingleThreadScheduledExecutor();
-	private final SPPManager sppManager = new SPPManager(SERVER_UUID);
+	// shared with the SPP layer so handing events between them needs no
+	// thread switch
+	private final EventLoop eventLoop = new EventLoop("control.v1");
+	private final SPPManager sppManager = new SPPManager(SERVER_UUID,
+			eventLoop);
 	private final Collection<EventListener> listeners = new LinkedList<EventListener>();
-	private Queue<V1.Request> pendingRequestQueue = new LinkedList<V1.Request>();
+	// requests sent to the device, issued by the control lane and completed
+	// as responses are read
+	private final RequestTracker requestTracker = new RequestTracker(
+			"control.v1", eventLoop, this);
+	// writes requests straight into the outbound buffers, control lane only
+	private final RequestEncoder requestEncoder = new RequestEncoder(
+			MAX_CHANNELS);
+	private final RequestTracker.Callback queryChannelsCallback = new QueryChannelsCallback();
+	private final RequestTracker.Callback setLevelCallback = new SetLevelCallback();
 	private StateMachine<State, Event, ControlV1>.Instance stateMachineInstance = stateMachine
 			.createInstance(this);
-	private final Map<Integer, LevelDataRecord> levelDataRecords = new ConcurrentHashMap<Integer, LevelDataRecord>();;
+	// config for each channel, written by the control lane
+	private final ChannelTable channelTable = new ChannelTable(MAX_CHANNELS);
+	// written by the SPP read thread, read by whoever draws the levels
+	private final LevelSnapshotStore levelSnapshots = new LevelSnapshotStore(
+			MAX_CHANNELS);
+	private volatile DecodeMode decodeMode = DecodeMode.DIRECT;
+	// the direct decoder's reader, reset onto each frame by the read thread
+	private final FrameReader frameReader = new FrameReader();
+	private volatile MeterConfigSource configSource = null;
+	// when the SPP link last came up, 0 once the first levels have arrived
+	private final AtomicLong connectedAt = new AtomicLong();
+	private final Histogram connectToFirstLevel = new Histogram();
+	// set while a level change is waiting to be handled, it picks up every
+	// config change made before it runs
+	private final AtomicBoolean levelChangeQueued = new AtomicBoolean();
+	// type last asked for on each channel, null when nothing has been asked
+	// for on this connection, written by the control lane
+	private final AtomicReferenceArray<V1.LevelType> requestedTypes = new AtomicReferenceArray<V1.LevelType>(
+			MAX_CHANNELS);
+	// hold time last asked for on each channel, control lane only
+	private final int[] requestedHoldtimes = new int[MAX_CHANNELS];
+	// config the device last acknowledged on each channel, null type when
+	// nothing has been on this connection, written as responses are read.
+	// A rejected request puts the requested config back to this
+	private final AtomicReferenceArray<V1.LevelType> acknowledgedTypes = new AtomicReferenceArray<V1.LevelType>(
+			MAX_CHANNELS);
+	private final AtomicIntegerArray acknowledgedHoldtimes = new AtomicIntegerArray(
+			MAX_CHANNELS);
+	// type the data lane accepts on each channel, NONE until the device has
+	// acknowledged what was asked for
+	private final AtomicReferenceArray<V1.LevelType> laneTypes = new AtomicReferenceArray<V1.LevelType>(
+			MAX_CHANNELS);
+	// from a frame being handed to us to the listeners hearing about it
+	private final Histogram dataLaneLatency = new Histogram();
 
 	// /////////////////////////////////////////////////////////////////////////
 	// static initialization
@@ -108,6 +222,8 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 				new DisconnectHandler());
 		stateMachine.addHandler(State.CONNECTING, Event.LEVEL_CHANGE,
 				stateMachine.createDoNothingHandler());
+		stateMachine.addHandler(State.CONNECTING, Event.LEVEL_REJECTED,
+				stateMachine.createDoNothingHandler());
 		stateMachine.addHandler(State.SYNCHRONIZING,
 				Event.QUERY_CHANNELS_RESPONSE,
 				new QueryChannelsResponseHandler());
@@ -115,18 +231,25 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 				new DisconnectHandler());
 		stateMachine.addHandler(State.SYNCHRONIZING, Event.LEVEL_CHANGE,
 				stateMachine.createDoNothingHandler());
+		stateMachine.addHandler(State.SYNCHRONIZING, Event.LEVEL_REJECTED,
+				stateMachine.createDoNothingHandler());
 		stateMachine.addHandler(State.CONNECTED, Event.DISCONNECTED,
 				new DisconnectHandler());
 		stateMachine.addHandler(State.CONNECTED, Event.LEVEL_CHANGE,
 				new ChangeLevelInConnectedHandler());
-
-		// register our message pools
-		messageManager.registerPool(LevelChangeMessage.class,
-				LevelChangeMessage.getPoolInstance());
-		messageManager.registerPool(SPPStateMessage.class,
-				SPPStateMessage.getPoolInstance());
-		messageManager.registerPool(SPPResponseMessage.class,
-				SPPResponseMessage.getPoolInstance());
+		stateMachine.addHandler(State.CONNECTED, Event.LEVEL_REJECTED,
+				new LevelRejectedHandler());
+		// left over from a connection that has since been dropped
+		StateMachine.Handler<State, ControlV1> unexpected = stateMachine
+				.createUnexpectedEventHandler();
+		stateMachine.addHandler(State.CONNECTING,
+				Event.QUERY_CHANNELS_RESPONSE, unexpected);
+		stateMachine.addHandler(State.SYNCHRONIZING, Event.CONNECTED,
+				unexpected);
+		stateMachine.addHandler(State.CONNECTED, Event.CONNECTED, unexpected);
+		stateMachine.addHandler(State.CONNECTED,
+				Event.QUERY_CHANNELS_RESPONSE, unexpected);
+		stateMachine.build();
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -144,6 +267,21 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		// setup the state machine state change listener
 		this.stateMachineInstance.setListener(new StateMachineListener());
 
+		// nothing is accepted until the device has been configured
+		resetLanes();
+
+		// start handling events
+		this.eventLoop.start();
+
+		// make the synchronize + first level times available
+		MetricsRegistry.register("control.v1.states",
+				this.stateMachineInstance.getMetrics());
+		MetricsRegistry.register("control.v1.connect_to_first_level",
+				this.connectToFirstLevel);
+		MetricsRegistry.register("control.v1.data_lane", this.dataLaneLatency);
+		MetricsRegistry.register("control.v1.control_lane",
+				this.eventLoop.getDispatchLatency());
+
 		LogWrapper.v(TAG, "ControlV1::ControlV1 exit");
 	}
 
@@ -160,28 +298,29 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		return instance;
 	}
 
+	/**
+	 * Tells the control layer the config source has changed. The configs are
+	 * compared against what the device has acknowledged on the event loop,
+	 * and only the channels that differ are sent or have their records
+	 * replaced.
+	 */
 	public void notifyLevelConfigChange() {
 		LogWrapper.v(TAG, "ControlV1::notifyLevelConfigChange enter", "this=",
 				this);
 
-		// clear all level data
-		this.levelDataRecords.clear();
-
 		// trigger the state machine
-		try {
-			LevelChangeMessage message = messageManager
-					.allocateMessage(LevelChangeMessage.class);
-			this.executor.execute(message);
-		} catch (Exception e) {
-			LogWrapper.wtf(TAG, e.getMessage());
+		if (true == this.levelChangeQueued.compareAndSet(false, true)) {
+			this.eventLoop.post(this, Event.LEVEL_CHANGE, null);
+		} else {
+			LogWrapper.d(TAG, "level change already queued");
 		}
 
-		LogWrapper.v(TAG, "ControlV1::updateLevel exit");
+		LogWrapper.v(TAG, "ControlV1::notifyLevelConfigChange exit");
 	}
 
 	public void addListener(EventListener listener) {
 		LogWrapper.v(TAG, "ControlV1::addListener enter", "this=", this,
-				"listener=" + listener);
+				"listener=", listener);
 		synchronized (this.listeners) {
 			this.listeners.add(listener);
 		}
@@ -197,39 +336,119 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		LogWrapper.v(TAG, "ControlV1::removeListener exit");
 	}
 
-	public Map<Integer, LevelDataRecord> getLevelDataRecord() {
-		return levelDataRecords;
+	public ChannelTable getChannelTable() {
+		return channelTable;
+	}
+
+	public LevelSnapshotStore getLevelSnapshotStore() {
+		return levelSnapshots;
 	}
 
 	public SPPManager getManager() {
 		return sppManager;
 	}
 
+	public EventLoop getEventLoop() {
+		return eventLoop;
+	}
+
 	public State getState() {
 		return this.stateMachineInstance.getState();
 	}
 
+	public StateMachineMetrics<State, Event> getStateMetrics() {
+		return this.stateMachineInstance.getMetrics();
+	}
+
+	/**
+	 * Time from the SPP link coming up to the first level notification
+	 * being published, once per connection.
+	 */
+	public Histogram getConnectToFirstLevel() {
+		return connectToFirstLevel;
+	}
+
+	/**
+	 * Time for a level frame to get from the SPP read thread to the
+	 * listeners.
+	 */
+	public Histogram getDataLaneLatency() {
+		return dataLaneLatency;
+	}
+
+	/**
+	 * Time for a connection, response or config event to get through the
+	 * event loop to the state machine.
+	 */
+	public Histogram getControlLaneLatency() {
+		return this.eventLoop.getDispatchLatency();
+	}
+
+	public MeterConfigSource getConfigSource() {
+		return configSource;
+	}
+
+	public void setConfigSource(MeterConfigSource configSource) {
+		this.configSource = configSource;
+	}
+
+	public DecodeMode getDecodeMode() {
+		return decodeMode;
+	}
+
+	public void setDecodeMode(DecodeMode decodeMode) {
+		this.decodeMode = decodeMode;
+	}
+
+	/**
+	 * How long the device has to answer a request before the link is reset.
+	 * Takes effect from the next request.
+	 */
+	public void setRequestTimeout(long timeoutInMillis) {
+		this.requestTracker.setTimeout(timeoutInMillis);
+	}
+
 	// ////////////////////////////////////////////////////////////////////////
 	// SPPStateListener implementation
 	// ////////////////////////////////////////////////////////////////////////
 
 	public void notifySPPStateChanged(SPPState state) {
 		LogWrapper.v(TAG, "ControlV1::notifySPPStateChanged enter", "this=",
-				this, "state=" + state);
+				this, "state=", state);
 
-		// send ourselves a message to handle this
-		try {
-			SPPStateMessage message = messageManager
-					.allocateMessage(SPPStateMessage.class);
-			message.init(state);
-			this.executor.execute(message);
-		} catch (Exception e) {
-			LogWrapper.wtf(TAG, e.getMessage());
+		// called on the event loop, the event goes to the back of the queue
+		// so the SPP transition finishes first
+		switch (state) {
+		case CONNECTED:
+			this.eventLoop.post(this, Event.CONNECTED, null);
+			break;
+		case DISCONNECTED:
+		case RECONNECTING:
+			this.eventLoop.post(this, Event.DISCONNECTED, null);
+			break;
+		case CONNECTING:
+			// ignore
+			break;
+		default:
+			LogWrapper.wtf(TAG, "state=", state);
+			break;
 		}
 
 		LogWrapper.v(TAG, "ControlV1::notifySPPStateChanged exit");
 	}
 
+	// ////////////////////////////////////////////////////////////////////////
+	// EventLoop.Dispatcher implementation
+	// ////////////////////////////////////////////////////////////////////////
+
+	public void dispatchEvent(Enum<?> event, Object data) {
+		if (Event.LEVEL_CHANGE == event) {
+			// config changes from here on need another pass
+			this.levelChangeQueued.set(false);
+		}
+		this.stateMachineInstance.evaluate((Event) event, data);
+	}
+
 	// ////////////////////////////////////////////////////////////////////////
 	// SPPMessageHandler implementation
 	// ////////////////////////////////////////////////////////////////////////
@@ -237,11 +456,24 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 	public void handleSPPMessage(ByteBuffer message) {
 		LogWrapper.v(TAG, "ControlV1::handleSPPMessage enter", "this=", this,
 				"message=", message);
+		long arrival = System.nanoTime();
+		// empty any channel whose lane has been closed before this frame's
+		// records go in, the response reopening a lane is read after it
+		this.levelSnapshots.applyClears();
+
+		// try the direct decoder first, it only hands back frames it can't
+		// process in place
+		if ((DecodeMode.DIRECT == this.decodeMode)
+				&& (true == decodeDirect(message, arrival))) {
+			LogWrapper.v(TAG, "ControlV1::handleSPPMessage exit");
+			return;
+		}
 
 		try {
 			// slice up the data into a form protobuf can parse
-			ByteString data = ByteString.copyFrom(message.array(), 0,
-					message.limit());
+			ByteString data = ByteString.copyFrom(message.array(),
+					message.arrayOffset() + message.position(),
+					message.remaining());
 			// decode the message
 			V1.ResponseOrNotification msg = V1.ResponseOrNotification
 					.parseFrom(data);
@@ -251,7 +483,7 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 				handleResponse(msg.getResponse());
 				break;
 			case NOTIFICATION:
-				handleNotification(msg.getNotification());
+				handleNotification(msg.getNotification(), arrival);
 				break;
 			default:
 				LogWrapper.e(TAG, "unknown type=", msg.getType());
@@ -264,6 +496,67 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		LogWrapper.v(TAG, "ControlV1::handleSPPMessage exit");
 	}
 
+	// ////////////////////////////////////////////////////////////////////////
+	// RequestTracker.Transmitter implementation
+	// ////////////////////////////////////////////////////////////////////////
+
+	public boolean transmit(V1.RequestType type, long argument) {
+		LogWrapper.v(TAG, "ControlV1::transmit enter", "this=", this,
+				"type=", type);
+		// calculate how large the request is in bytes
+		int length;
+		switch (type) {
+		case QUERYAUDIOCHANNELS:
+			length = this.requestEncoder.getQueryChannelsSize();
+			break;
+		case SETLEVEL:
+			length = this.requestEncoder.getSetLevelSize(
+					unpackLevelType(argument), unpackChannel(argument),
+					unpackHoldtime(argument));
+			break;
+		default:
+			LogWrapper.wtf(TAG, "unknown type=", type);
+			return false;
+		}
+		// find a buffer size class that can hold it
+		ObjectPool<ByteBuffer> pool = SPPConnection.getBufferPool(length);
+		if (null == pool) {
+			LogWrapper.e(TAG, "request too large to send, length=", length);
+			return false;
+		}
+		try {
+			// allocate a byte buffer to hold it
+			ByteBuffer buffer = pool.borrowObject();
+			// write the request straight into it
+			if (V1.RequestType.QUERYAUDIOCHANNELS == type) {
+				this.requestEncoder.encodeQueryChannels(buffer.array());
+			} else {
+				this.requestEncoder.encodeSetLevel(buffer.array(),
+						unpackLevelType(argument), unpackChannel(argument),
+						unpackHoldtime(argument));
+			}
+			// indicate the number of bytes used
+			buffer.limit(length);
+			// off she goes, it's written from the event loop
+			if (false == this.sppManager.sendRequest(buffer)) {
+				// the buffer has gone back to its pool, fail the request
+				// now rather than leave it to time out
+				return false;
+			}
+			TraceRecorder.record(TraceRecorder.REQUEST_SENT, traceSource,
+					type.getNumber());
+		} catch (NoSuchElementException e) {
+			// every buffer is queued up behind the link, fail the request
+			LogWrapper.w(TAG, "no buffer for request, length=", length);
+			return false;
+		} catch (Exception e) {
+			LogWrapper.wtf(TAG, e.getMessage());
+			return false;
+		}
+		LogWrapper.v(TAG, "ControlV1::transmit exit");
+		return true;
+	}
+
 	// ////////////////////////////////////////////////////////////////////////
 	// package protected method implementations
 	// ////////////////////////////////////////////////////////////////////////
@@ -272,41 +565,124 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		return stateMachineInstance;
 	}
 
+	void handleNotification(V1.Notification notification, long arrival) {
+		LogWrapper.v(TAG, "ControlV1::handleNotification enter", "this=", this,
+				"notification=", notification);
+		switch (notification.getType()) {
+		case LEVEL:
+			for (v1.V1.LevelRecord externalRecord : notification.getLevel()
+					.getRecordsList()) {
+				if (false == updateLevel(externalRecord.getType(),
+						externalRecord.getChannel(),
+						externalRecord.getPeakInDB(),
+						externalRecord.getHoldInDB(),
+						externalRecord.getVuInUnits())) {
+					return;
+				}
+			}
+			// let the listeners know there's new data available
+			notifyLevelsUpdated(arrival);
+			break;
+		default:
+			LogWrapper.wtf(TAG, "unknown type=", notification.getType());
+			return;
+		}
+		LogWrapper.v(TAG, "ControlV1::handleNotification exit");
+	}
+
 	// ////////////////////////////////////////////////////////////////////////
 	// private method implementations
 	// ////////////////////////////////////////////////////////////////////////
 
-	private void sendLevelRequest(MeterConfig config) {
-		LogWrapper.v(TAG, "ControlV1::sendLevelRequest enter", "this=", this,
-				"config=", config);
-
-		// remove any existing data record
-		this.levelDataRecords.remove(config.getChannel());
+	/**
+	 * Brings the device in line with a set of channel configs. Only the
+	 * channels whose meter type or hold time differ from what the device
+	 * has, or is about to have, get a SETLEVEL. The protocol has no batched
+	 * SETLEVEL, so each channel is its own request.
+	 * <p>
+	 * The set still completes in one round trip, because of the SPPManager
+	 * write batching: every request posted from this one event is buffered
+	 * ahead of the single flush it schedules, so they go out in one write,
+	 * and the request tracker pipelines the responses. That only holds while
+	 * the batch is big enough for the whole set, see
+	 * SPPManager.setWriteBatching(). A rejected SETLEVEL puts
+	 * just its own channel back to what the device has, the rest of the set
+	 * and the link are unaffected.
+	 */
+	private void sendLevelRequests(Collection<MeterConfig> configs) {
+		LogWrapper.v(TAG, "ControlV1::sendLevelRequests enter", "this=", this,
+				"configs=", configs);
+		int sent = 0;
+		for (MeterConfig config : configs) {
+			// the display side may have changed even if the device hasn't
+			this.channelTable.put(config);
+			if (false == isLevelChanged(config)) {
+				continue;
+			}
+			sendLevelRequest(config);
+			sent++;
+		}
+		LogWrapper.d(TAG, "level requests sent=", sent, "configs=",
+				configs.size());
+		LogWrapper.v(TAG, "ControlV1::sendLevelRequests exit");
+	}
 
-		// create + store the new record
-		LevelDataRecord record = LevelDataRecordFactory.createLevelDataRecord(
-				config.getMeterType(), config.getChannel());
-		if (null != record) {
-			this.levelDataRecords.put(config.getChannel(), record);
+	/**
+	 * True if the config differs from the one the device last acknowledged
+	 * on this connection, or from the one it's been asked for since if that
+	 * hasn't been acknowledged yet.
+	 */
+	private boolean isLevelChanged(MeterConfig config) {
+		int channel = config.getChannel();
+		if (false == isLaneChannel(channel)) {
+			return true;
+		}
+		V1.LevelType type = levelMapper.mapToExternal(config.getMeterType());
+		int holdtime = getHoldtime(config);
+		V1.LevelType requestedType = this.requestedTypes.get(channel);
+		int requestedHoldtime = this.requestedHoldtimes[channel];
+		if ((requestedType != this.acknowledgedTypes.get(channel))
+				|| (requestedHoldtime != this.acknowledgedHoldtimes
+						.get(channel))) {
+			// a request is on its way, it's what the device will end up with
+			return (type != requestedType) || (holdtime != requestedHoldtime);
 		}
+		return (type != this.acknowledgedTypes.get(channel))
+				|| (holdtime != this.acknowledgedHoldtimes.get(channel));
+	}
 
-		// build the message to set the level
-		V1.SetLevelRequest.Builder setLevelRequestBuilder = V1.SetLevelRequest
-				.newBuilder();
-		setLevelRequestBuilder.setType(levelMapper.mapToExternal(config
-				.getMeterType()));
-		setLevelRequestBuilder.setChannel(config.getChannel());
+	private static int getHoldtime(MeterConfig config) {
 		// only set the hold time if this meter supports it
 		if (true == config instanceof HoldTimeConfig) {
-			setLevelRequestBuilder.setHoldtime(((HoldTimeConfig) config)
-					.getHoldtime());
+			Integer holdtime = ((HoldTimeConfig) config).getHoldtime();
+			if (null != holdtime) {
+				return holdtime;
+			}
 		}
-		V1.Request.Builder requestBuilder = V1.Request.newBuilder();
-		requestBuilder.setSetlevel(setLevelRequestBuilder);
-		requestBuilder.setType(V1.RequestType.SETLEVEL);
+		return NO_HOLDTIME;
+	}
 
-		// send the message
-		sendRequest(requestBuilder.build());
+	private void sendLevelRequest(MeterConfig config) {
+		LogWrapper.v(TAG, "ControlV1::sendLevelRequest enter", "this=", this,
+				"config=", config);
+
+		// stop the data lane taking the old type until the device switches
+		V1.LevelType type = levelMapper.mapToExternal(config.getMeterType());
+		int channel = config.getChannel();
+		int holdtime = getHoldtime(config);
+		if (true == isLaneChannel(channel)) {
+			this.requestedTypes.set(channel, type);
+			this.requestedHoldtimes[channel] = holdtime;
+			if (type != this.laneTypes.get(channel)) {
+				this.laneTypes.set(channel, V1.LevelType.NONE);
+				// don't leave the old type's values up in the meantime
+				this.levelSnapshots.clearLevel(channel);
+			}
+		}
+
+		// send the message, it's encoded as it's written
+		sendRequest(V1.RequestType.SETLEVEL,
+				packSetLevel(type, channel, holdtime), this.setLevelCallback);
 
 		LogWrapper.v(TAG, "ControlV1::sendLevelRequest exit");
 	}
@@ -315,152 +691,349 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		LogWrapper.v(TAG, "ControlV1::sendQueryChannelRequest enter", "this=",
 				this);
 
-		// build the message to set the level
-		V1.QueryAudioChannelsRequest.Builder queryChannelRequestBuilder = V1.QueryAudioChannelsRequest
-				.newBuilder();
-		V1.Request.Builder requestBuilder = V1.Request.newBuilder();
-		requestBuilder.setQueryaudiochannels(queryChannelRequestBuilder);
-		requestBuilder.setType(V1.RequestType.QUERYAUDIOCHANNELS);
-
 		// send the message
-		sendRequest(requestBuilder.build());
+		sendRequest(V1.RequestType.QUERYAUDIOCHANNELS, 0,
+				this.queryChannelsCallback);
 
 		LogWrapper.v(TAG, "ControlV1::sendQueryChannelRequest exit");
 	}
 
-	private void sendRequest(V1.Request request) {
-		LogWrapper.v(TAG, "ControlV1::sendRequest", "this=", this, "request=",
-				request);
-		// add the request to the bottom of the pending list
-		this.pendingRequestQueue.add(request);
-		// calculate how large the request is in bytes
-		short length = (short) request.getSerializedSize();
-		try {
-			// allocate a byte buffer to hold it
-			ByteBuffer buffer = SPPConnection.getBufferPool().borrowObject();
-			assert buffer.capacity() >= length;
-			// wrap the buffer
-			CodedOutputStream stream = CodedOutputStream.newInstance(buffer
-					.array());
-			// write in the serialized request
-			request.writeTo(stream);
-			// indicate the number of bytes used
-			buffer.limit(length);
-			// off she goes
-			this.sppManager.sendRequest(buffer);
-		} catch (Exception e) {
-			LogWrapper.wtf(TAG, e.getMessage());
+	private void sendRequest(V1.RequestType type, long argument,
+			RequestTracker.Callback callback) {
+		LogWrapper.v(TAG, "ControlV1::sendRequest", "this=", this, "type=",
+				type, "callback=", callback);
+		// the tracker writes it out through transmit()
+		if (false == this.requestTracker.issue(type, argument, callback)) {
+			LogWrapper.e(TAG, "unable to send request type=", type);
 		}
-
 		LogWrapper.v(TAG, "ControlV1::sendRequest exit");
+	}
+
+	// a SETLEVEL's fields packed into the request tracker's argument, hold
+	// time in the top half, then the level type and the channel
+	private static long packSetLevel(V1.LevelType type, int channel,
+			int holdtime) {
+		return ((long) holdtime << 32) | ((long) type.getNumber() << 24)
+				| (channel & 0xffffff);
+	}
+
+	private static V1.LevelType unpackLevelType(long argument) {
+		return V1.LevelType.valueOf((int) (argument >>> 24) & 0xff);
+	}
 
+	private static int unpackChannel(long argument) {
+		return (int) argument & 0xffffff;
+	}
+
+	private static int unpackHoldtime(long argument) {
+		return (int) (argument >> 32);
 	}
 
 	private void handleResponse(V1.Response response) {
 		LogWrapper.v(TAG, "ControlV1::handleResponse enter", "this=", this,
 				"response=", response);
 
-		// if there are no pending request we have a problem
-		if (true == this.pendingRequestQueue.isEmpty()) {
-			LogWrapper.e(TAG, "response received when request list is empty");
-			this.sppManager.disconnect();
-			return;
-		}
-
-		// get the top of the request list
-		V1.Request request = this.pendingRequestQueue.remove();
+		TraceRecorder.record(TraceRecorder.RESPONSE_RECEIVED, traceSource,
+				response.getType().getNumber(), response.getSuccess() ? 1 : 0);
 
-		// request + response should match up
-		if (false == request.getType().equals(response.getType())) {
-			LogWrapper.e(TAG, "request + response types don't match");
-			this.sppManager.disconnect();
-			return;
+		// find the request this answers, its callback does the rest
+		if (false == this.requestTracker.complete(response)) {
+			// we're out of step with the server
+			this.sppManager.reset();
 		}
+		LogWrapper.v(TAG, "ControlV1::handleResponse exit");
+	}
 
+	/**
+	 * Returns true if the request went through, otherwise resets the
+	 * connection.
+	 */
+	private boolean checkResponse(V1.Response response) {
+		if (null == response) {
+			// requests aren't resent, there's no telling which answer would
+			// belong to which, so start again on a new connection
+			LogWrapper.w(TAG,
+					"server didn't answer, resetting bluetooth connection");
+			this.sppManager.reset();
+			return false;
+		}
 		// the server should never say no
 		if (true != response.getSuccess()) {
 			LogWrapper.w(TAG,
 					"server rejected request, resetting bluetooth connection");
 			// force the server to disconnect
 			this.sppManager.disconnect();
-		} else {
-			// fire a message to process in our own thread
-			SPPResponseMessage message = messageManager
-					.allocateMessage(SPPResponseMessage.class);
-			message.init(response);
-			this.executor.execute(message);
+			return false;
 		}
-		LogWrapper.v(TAG, "ControlV1::handleResponse exit");
+		return true;
 	}
 
-	private void handleNotification(V1.Notification notification) {
-		LogWrapper.v(TAG, "ControlV1::handleNotification enter", "this=", this,
-				"notification=", notification.toString());
-		switch (notification.getType()) {
-		case LEVEL:
-			for (v1.V1.LevelRecord externalRecord : notification.getLevel()
-					.getRecordsList())
-
-			{
-				// convert the type into our internal version
-				MeterType recordLevel = levelMapper
-						.mapToInternal(externalRecord.getType());
-				// get the configured level
-				MeterType configuredLevel = LevelingGlassApplication
-						.getInstance()
-						.getConfigForChannel(externalRecord.getChannel())
-						.getMeterType();
-				// ignore if the type doesn't match
-				if (false == recordLevel.equals(configuredLevel)) {
-					LogWrapper.d(TAG, "ignoring record, record=", recordLevel,
-							"configured=", configuredLevel);
-					continue;
+	private void acknowledgeLevel(long argument) {
+		int channel = unpackChannel(argument);
+		if (false == isLaneChannel(channel)) {
+			return;
+		}
+		V1.LevelType type = unpackLevelType(argument);
+		// remember what the device now has for the next config change
+		this.acknowledgedHoldtimes.set(channel, unpackHoldtime(argument));
+		this.acknowledgedTypes.set(channel, type);
+		// a later request for this channel may still be on its way, in which
+		// case its acknowledgement opens the lane
+		if (type == this.requestedTypes.get(channel)) {
+			this.laneTypes.set(channel, type);
+		}
+	}
+
+	/**
+	 * Puts a channel back to the config the device last acknowledged after
+	 * it turned a SETLEVEL down. Control lane only.
+	 */
+	private void rejectLevel(long argument) {
+		int channel = unpackChannel(argument);
+		if (false == isLaneChannel(channel)) {
+			return;
+		}
+		// a later request for this channel will settle it instead
+		V1.LevelType requestedType = unpackLevelType(argument);
+		int requestedHoldtime = unpackHoldtime(argument);
+		if ((requestedType != this.requestedTypes.get(channel))
+				|| (requestedHoldtime != this.requestedHoldtimes[channel])) {
+			return;
+		}
+		V1.LevelType type = this.acknowledgedTypes.get(channel);
+		this.requestedTypes.set(channel, type);
+		this.requestedHoldtimes[channel] = this.acknowledgedHoldtimes
+				.get(channel);
+		// the device never stopped sending what it had
+		this.laneTypes.set(channel, (null == type) ? V1.LevelType.NONE : type);
+	}
+
+	private void resetLanes() {
+		for (int channel = 0; channel < MAX_CHANNELS; channel++) {
+			// a new connection has to be told everything
+			this.requestedTypes.set(channel, null);
+			this.requestedHoldtimes[channel] = NO_HOLDTIME;
+			this.acknowledgedTypes.set(channel, null);
+			this.acknowledgedHoldtimes.set(channel, NO_HOLDTIME);
+			this.laneTypes.set(channel, V1.LevelType.NONE);
+			// and stop showing what the last connection sent
+			this.levelSnapshots.clearLevel(channel);
+		}
+	}
+
+	private static boolean isLaneChannel(int channel) {
+		return (channel >= 0) && (channel < MAX_CHANNELS);
+	}
+
+	private boolean updateLevel(V1.LevelType type, int channel,
+			float peak, float hold, float vu) {
+		// ignore if the device hasn't agreed to send this type
+		if ((false == isLaneChannel(channel)) || (null == type)
+				|| (type != this.laneTypes.get(channel))) {
+			// a closed lane can see a whole frame of these, so don't box the
+			// channel unless it's going to be logged
+			if (true == LogWrapper.isDebugEnabled()) {
+				LogWrapper.d(TAG, "ignoring record, channel=", channel,
+						"type=", type);
+			}
+			return true;
+		}
+		// make sure we're expecting data for this channel
+		if (null == this.channelTable.getConfig(channel)) {
+			if (true == LogWrapper.isDebugEnabled()) {
+				LogWrapper.d(TAG, "channel config missing, channel=", channel);
+			}
+			return true;
+		}
+		// stage the values, they're published once the whole frame is in
+		switch (type) {
+		case PPM:
+			this.levelSnapshots.setLevel(channel, MeterType.PPM, peak, hold);
+			break;
+		case DIGITALPEAK:
+			this.levelSnapshots.setLevel(channel, MeterType.DIGITALPEAK, peak,
+					hold);
+			break;
+		case VU:
+			this.levelSnapshots.setLevel(channel, MeterType.VU, vu,
+					LevelSnapshot.NO_HOLD);
+			break;
+		default:
+			LogWrapper.wtf(TAG, "unexpected type=", type);
+			return false;
+		}
+		return true;
+	}
+
+	private void notifyLevelsUpdated(long arrival) {
+		// make the frame visible to readers before telling them about it
+		long sequence = this.levelSnapshots.publish();
+		TraceRecorder.record(TraceRecorder.LEVELS_UPDATED, traceSource,
+				(int) sequence);
+		// only the first frame after a connect gets past the plain read
+		if (0 != this.connectedAt.get()) {
+			long connected = this.connectedAt.getAndSet(0);
+			if (0 != connected) {
+				long elapsed = System.nanoTime() - connected;
+				this.connectToFirstLevel.record(elapsed);
+				LogWrapper.d(TAG, "first levels after connect, ms=",
+						TimeUnit.NANOSECONDS.toMillis(elapsed));
+			}
+		}
+		synchronized (this.listeners) {
+			for (EventListener listener : listeners) {
+				listener.notifyLevelsUpdated();
+			}
+		}
+		this.dataLaneLatency.record(System.nanoTime() - arrival);
+	}
+
+	/**
+	 * Decodes a frame without building the protobuf object graph. The
+	 * FrameReader walks the frame buffer in place, and each level record
+	 * whose lane is open and whose channel is in the ChannelTable is staged
+	 * in the LevelSnapshotStore's working frame, which is published once the
+	 * whole notification is in. Anything else makes this return false so
+	 * the caller can fall back to a full parse.
+	 */
+	private boolean decodeDirect(ByteBuffer message, long arrival) {
+		try {
+			FrameReader stream = this.frameReader;
+			stream.reset(message.array(),
+					message.arrayOffset() + message.position(),
+					message.remaining());
+			boolean handled = false;
+			while (true) {
+				int tag = stream.readTag();
+				if (0 == tag) {
+					break;
+				} else if (TAG_NOTIFICATION == tag) {
+					int limit = stream.pushLimit(stream.readRawVarint32());
+					if (false == decodeNotification(stream)) {
+						return true;
+					}
+					stream.popLimit(limit);
+					handled = true;
+				} else if (TAG_RESPONSE == tag) {
+					// responses are rare, let the full parser deal with them
+					return false;
+				} else if (false == stream.skipField(tag)) {
+					break;
 				}
-				// get the record
-				LevelDataRecord internalRecord = this.levelDataRecords
-						.get(externalRecord.getChannel());
-				if (null == internalRecord) {
-					LogWrapper.d(TAG, "internal record missing, channel=",
-							externalRecord.getChannel());
-					continue;
+			}
+			if (false == handled) {
+				return false;
+			}
+			// let the listeners know there's new data available
+			notifyLevelsUpdated(arrival);
+		} catch (IOException e) {
+			LogWrapper.e(TAG, "unable to decode message, reason=",
+					e.getMessage());
+		}
+		return true;
+	}
+
+	private boolean decodeNotification(FrameReader stream)
+			throws IOException {
+		while (true) {
+			int tag = stream.readTag();
+			if (0 == tag) {
+				return true;
+			} else if (TAG_NOTIFICATION_LEVEL == tag) {
+				int limit = stream.pushLimit(stream.readRawVarint32());
+				if (false == decodeLevelNotification(stream)) {
+					return false;
 				}
-				synchronized (internalRecord) {
-					switch (configuredLevel) {
-					case PPM:
-					case DIGITALPEAK:
-						// update the internal record
-						internalRecord.setLevel(externalRecord.getPeakInDB());
-						((PeakDataRecord) internalRecord)
-								.setHold(externalRecord.getHoldInDB());
+				stream.popLimit(limit);
+			} else if (false == stream.skipField(tag)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean decodeLevelNotification(FrameReader stream)
+			throws IOException {
+		while (true) {
+			int tag = stream.readTag();
+			if (0 == tag) {
+				return true;
+			} else if (TAG_LEVEL_RECORDS == tag) {
+				int limit = stream.pushLimit(stream.readRawVarint32());
+				// fields can arrive in any order so collect them first
+				V1.LevelType type = null;
+				int channel = 0;
+				float peak = 0.0f;
+				float hold = 0.0f;
+				float vu = 0.0f;
+				while (true) {
+					int field = stream.readTag();
+					if (0 == field) {
 						break;
-					case VU:
-						internalRecord.setLevel(externalRecord.getVuInUnits());
+					} else if (TAG_RECORD_TYPE == field) {
+						type = V1.LevelType.valueOf(stream.readRawVarint32());
+					} else if (TAG_RECORD_CHANNEL == field) {
+						channel = stream.readRawVarint32();
+					} else if (TAG_RECORD_PEAK == field) {
+						peak = stream.readFloat();
+					} else if (TAG_RECORD_HOLD == field) {
+						hold = stream.readFloat();
+					} else if (TAG_RECORD_VU == field) {
+						vu = stream.readFloat();
+					} else if (false == stream.skipField(field)) {
 						break;
-					default:
-						LogWrapper
-								.wtf(TAG, "unexpected type=", configuredLevel);
-						return;
 					}
 				}
-			}
-			// let the listeners know there's new data available
-			synchronized (this.listeners) {
-				for (EventListener listener : listeners) {
-					listener.notifyLevelsUpdated();
+				stream.popLimit(limit);
+				if (false == updateLevel(type, channel, peak, hold,
+						vu)) {
+					return false;
 				}
+			} else if (false == stream.skipField(tag)) {
+				return true;
 			}
-			break;
-		default:
-			LogWrapper.wtf(TAG, "unknown type=", notification.getType());
-			return;
 		}
-		LogWrapper.v(TAG, "ControlV1::handleNotification exit");
+	}
+
+	private static int makeTag(int fieldNumber, int wireType) {
+		return (fieldNumber << 3) | wireType;
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
 	// inner classes
 	// /////////////////////////////////////////////////////////////////////////
 
+	private class QueryChannelsCallback implements RequestTracker.Callback {
+
+		@Override
+		public void requestCompleted(V1.RequestType type, long argument,
+				V1.Response response) {
+			if (true == checkResponse(response)) {
+				// hand the result over to the control lane
+				eventLoop.post(ControlV1.this, Event.QUERY_CHANNELS_RESPONSE,
+						response.getQueryaudiochannels());
+			}
+		}
+	}
+
+	private class SetLevelCallback implements RequestTracker.Callback {
+
+		@Override
+		public void requestCompleted(V1.RequestType type, long argument,
+				V1.Response response) {
+			if ((null != response) && (false == response.getSuccess())) {
+				LogWrapper.w(TAG, "server rejected level, channel=",
+						unpackChannel(argument));
+				// the device kept what it had, the control lane goes back
+				// to that
+				eventLoop.post(ControlV1.this, Event.LEVEL_REJECTED, argument);
+			} else if (true == checkResponse(response)) {
+				// open the data lane here rather than on the event loop so
+				// it's done before the next frame is read
+				acknowledgeLevel(argument);
+			}
+		}
+	}
+
 	private class StateMachineListener implements
 			StateMachine.StateChangeListener<State> {
 
@@ -485,6 +1058,10 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		public State handleEvent(ControlV1 object, Object data) {
 			LogWrapper.v(TAG, "ControlV1::ConnectHandler::handleEvent enter",
 					"this=", this, "object=", object, "data=", data);
+			// start timing how long until the levels flow
+			object.connectedAt.set(System.nanoTime());
+			// the device starts out sending nothing
+			object.resetLanes();
 			// send the request for the list of channels
 			object.sendQueryChannelRequest();
 
@@ -506,9 +1083,11 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 			V1.QueryAudioChannelsResponse response = (V1.QueryAudioChannelsResponse) data;
 			// the set of configs to store
 			Set<MeterConfig> configSet = new TreeSet<MeterConfig>();
+			// the ones we already have a config for
+			Collection<MeterConfig> knownConfigs = new LinkedList<MeterConfig>();
 			for (int channel : response.getChannelsList()) {
 				// if we don't know about this channel populate
-				MeterConfig config = LevelingGlassApplication.getInstance()
+				MeterConfig config = object.configSource
 						.getConfigForChannel(channel);
 				if (null == config) {
 					LogWrapper.d(TAG, "unknown channel=", channel,
@@ -517,15 +1096,17 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 					config = MeterConfigFactory.createMeterConfig(
 							MeterType.NONE, channel);
 				} else {
-					LogWrapper.d(TAG, "updating channel=", channel);
-					object.sendLevelRequest(config);
+					knownConfigs.add(config);
 				}
 				// add this config to the set
 				configSet.add(config);
 			}
 			
 			// store all meter configs
-			LevelingGlassApplication.getInstance().setConfigForAllChannels(configSet);
+			object.configSource.setConfigForAllChannels(configSet);
+
+			// configure the known channels in one go
+			object.sendLevelRequests(knownConfigs);
 
 			// now connected
 			LogWrapper
@@ -541,11 +1122,15 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		public State handleEvent(ControlV1 object, Object data) {
 			LogWrapper.v(TAG,
 					"ControlV1::DisconnectHandler::handleEvent enter", "this=",
-					this, "object=", object, "data=" + data);
+					this, "object=", object, "data=", data);
 			// clear any level data we may have
-			object.levelDataRecords.clear();
-			// clear any pending messages
-			object.pendingRequestQueue.clear();
+			object.channelTable.clear();
+			// forget any outstanding requests
+			object.requestTracker.reset();
+			// anything still being read belongs to the old connection
+			object.resetLanes();
+			// never got as far as levels on this connection
+			object.connectedAt.set(0);
 			// now connecting
 			LogWrapper.v(TAG, "ControlV1::DisconnectHandler::handleEvent exit");
 			return State.CONNECTING;
@@ -559,15 +1144,14 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 			LogWrapper
 					.v(TAG,
 							"ControlV1::ChangeLevelInConnectedHandler::handleEvent enter",
-							"this=", this, "object=", object, "data=" + data);
-			for (int channel : LevelingGlassApplication.getInstance()
-					.getChannelSet()) {
-				// get the config
-				MeterConfig config = LevelingGlassApplication.getInstance()
-						.getConfigForChannel(channel);
-				// send the new level
-				object.sendLevelRequest(config);
+							"this=", this, "object=", object, "data=", data);
+			// collect every channel's config
+			Collection<MeterConfig> configs = new LinkedList<MeterConfig>();
+			for (int channel : object.configSource.getChannelSet()) {
+				configs.add(object.configSource.getConfigForChannel(channel));
 			}
+			// send whatever has changed in one go
+			object.sendLevelRequests(configs);
 			// no change in state
 			LogWrapper
 					.v(TAG,
@@ -576,4 +1160,21 @@ public class ControlV1 implements SPPMessageHandler, SPPStateListener {
 		}
 	}
 
+	private static class LevelRejectedHandler implements
+			StateMachine.Handler<State, ControlV1> {
+		@Override
+		public State handleEvent(ControlV1 object, Object data) {
+			LogWrapper.v(TAG,
+					"ControlV1::LevelRejectedHandler::handleEvent enter",
+					"this=", this, "object=", object, "data=", data);
+			// go back to what the device has, the next config change will
+			// ask again
+			object.rejectLevel((Long) data);
+			// no change in state
+			LogWrapper.v(TAG,
+					"ControlV1::LevelRejectedHandler::handleEvent exit");
+			return null;
+		}
+	}
+
 }
\ No newline at end of file
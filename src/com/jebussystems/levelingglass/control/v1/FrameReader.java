@@ -0,0 +1,164 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Reads protobuf wire format straight out of a frame buffer. It covers only
+ * what the direct decoder needs, tags, varints, fixed32 floats, skipping and
+ * nested limits, and unlike CodedInputStream it is reset onto each frame
+ * rather than created for it, so decoding a frame allocates nothing.
+ * <p>
+ * Not thread safe, the thread reading frames owns it.
+ */
+class FrameReader
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// WireFormat's own helpers for these aren't public
+	private static final int TAG_TYPE_BITS = 3;
+	private static final int TAG_TYPE_MASK = (1 << TAG_TYPE_BITS) - 1;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private byte[] buffer = null;
+	private int position = 0;
+	// end of the message being read, moved in and out by push + popLimit
+	private int limit = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// package protected methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	void reset(byte[] buffer, int offset, int length)
+	{
+		this.buffer = buffer;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	/**
+	 * Returns 0 at the end of the current limit.
+	 */
+	int readTag() throws InvalidProtocolBufferException
+	{
+		if (position >= limit)
+		{
+			return 0;
+		}
+		int tag = readRawVarint32();
+		if (0 == (tag >>> TAG_TYPE_BITS))
+		{
+			throw new InvalidProtocolBufferException("invalid tag");
+		}
+		return tag;
+	}
+
+	int readRawVarint32() throws InvalidProtocolBufferException
+	{
+		int result = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			if (position >= limit)
+			{
+				throw truncated();
+			}
+			byte b = buffer[position++];
+			// anything past 32 bits is dropped, the same as CodedInputStream
+			if (shift < 32)
+			{
+				result |= (b & 0x7f) << shift;
+			}
+			if (0 == (b & 0x80))
+			{
+				return result;
+			}
+		}
+		throw new InvalidProtocolBufferException("malformed varint");
+	}
+
+	float readFloat() throws InvalidProtocolBufferException
+	{
+		if (limit - position < 4)
+		{
+			throw truncated();
+		}
+		int bits = (buffer[position] & 0xff)
+		        | ((buffer[position + 1] & 0xff) << 8)
+		        | ((buffer[position + 2] & 0xff) << 16)
+		        | ((buffer[position + 3] & 0xff) << 24);
+		position += 4;
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Returns false for an end group tag, the same as CodedInputStream.
+	 */
+	boolean skipField(int tag) throws InvalidProtocolBufferException
+	{
+		switch (tag & TAG_TYPE_MASK)
+		{
+			case WireFormat.WIRETYPE_VARINT:
+				readRawVarint32();
+				return true;
+			case WireFormat.WIRETYPE_FIXED64:
+				skip(8);
+				return true;
+			case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+				skip(readRawVarint32());
+				return true;
+			case WireFormat.WIRETYPE_FIXED32:
+				skip(4);
+				return true;
+			case WireFormat.WIRETYPE_END_GROUP:
+				return false;
+			default:
+				// groups aren't used by the V1 protocol
+				throw new InvalidProtocolBufferException("unexpected wire type");
+		}
+	}
+
+	/**
+	 * Limits reading to the next length bytes, returning the old limit for
+	 * popLimit().
+	 */
+	int pushLimit(int length) throws InvalidProtocolBufferException
+	{
+		if ((length < 0) || (length > limit - position))
+		{
+			throw truncated();
+		}
+		int old = limit;
+		limit = position + length;
+		return old;
+	}
+
+	void popLimit(int old)
+	{
+		// skip whatever the nested message didn't read
+		position = limit;
+		limit = old;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void skip(int length) throws InvalidProtocolBufferException
+	{
+		if ((length < 0) || (length > limit - position))
+		{
+			throw truncated();
+		}
+		position += length;
+	}
+
+	private static InvalidProtocolBufferException truncated()
+	{
+		return new InvalidProtocolBufferException("truncated message");
+	}
+}
@@ -0,0 +1,189 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import java.io.IOException;
+
+import v1.V1;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.jebussystems.levelingglass.util.LogWrapper;
+
+/**
+ * Writes V1 requests straight into an output buffer without building any
+ * protobuf messages. A QUERYAUDIOCHANNELS request never changes, so it is
+ * encoded once. A SETLEVEL is copied from a cached image of the request for
+ * its meter type and channel, with the hold time appended and the length of
+ * the SetLevelRequest patched to suit, so once a channel has been sent
+ * encoding it again allocates nothing.
+ * <p>
+ * Not thread safe, the control lane owns it.
+ */
+public class RequestEncoder
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "control.v1.requestencoder";
+
+	// hold time for a meter that doesn't have one
+	public static final int NO_HOLDTIME = -1;
+
+	private static final int TAG_SETLEVEL_HOLDTIME = (V1.SetLevelRequest.HOLDTIME_FIELD_NUMBER << 3)
+	        | WireFormat.WIRETYPE_VARINT;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final int maxChannels;
+	private final byte[] queryChannels;
+	// SETLEVEL without a hold time, by level type then channel
+	private final byte[][] templates;
+	// offset of the SetLevelRequest length in every template, it comes
+	// straight after the request type and the SetLevelRequest tag
+	private final int lengthOffset;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Templates are cached for channels below maxChannels, anything above is
+	 * encoded from scratch each time.
+	 */
+	public RequestEncoder(int maxChannels)
+	{
+		LogWrapper.v(TAG, "RequestEncoder::RequestEncoder enter", "this=",
+		        this, "maxChannels=", maxChannels);
+		this.maxChannels = maxChannels;
+		this.templates = new byte[V1.LevelType.values().length * maxChannels][];
+		this.lengthOffset = CodedOutputStream.computeEnumSize(
+		        V1.Request.TYPE_FIELD_NUMBER,
+		        V1.RequestType.SETLEVEL.getNumber())
+		        + CodedOutputStream.computeTagSize(V1.Request.SETLEVEL_FIELD_NUMBER);
+		this.queryChannels = V1.Request
+		        .newBuilder()
+		        .setType(V1.RequestType.QUERYAUDIOCHANNELS)
+		        .setQueryaudiochannels(
+		                V1.QueryAudioChannelsRequest.newBuilder()).build()
+		        .toByteArray();
+		LogWrapper.v(TAG, "RequestEncoder::RequestEncoder exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public int getQueryChannelsSize()
+	{
+		return queryChannels.length;
+	}
+
+	/**
+	 * Returns the number of bytes written.
+	 */
+	public int encodeQueryChannels(byte[] output)
+	{
+		System.arraycopy(queryChannels, 0, output, 0, queryChannels.length);
+		return queryChannels.length;
+	}
+
+	public int getSetLevelSize(V1.LevelType type, int channel, int holdtime)
+	{
+		int size = getTemplate(type, channel).length;
+		if (NO_HOLDTIME != holdtime)
+		{
+			size += CodedOutputStream.computeUInt32Size(
+			        V1.SetLevelRequest.HOLDTIME_FIELD_NUMBER, holdtime);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes written.
+	 */
+	public int encodeSetLevel(byte[] output, V1.LevelType type, int channel,
+	        int holdtime)
+	{
+		byte[] template = getTemplate(type, channel);
+		System.arraycopy(template, 0, output, 0, template.length);
+		int position = template.length;
+		if (NO_HOLDTIME != holdtime)
+		{
+			position = writeVarint(output, position, TAG_SETLEVEL_HOLDTIME);
+			position = writeVarint(output, position, holdtime);
+			// the template has room for a single byte length, which a
+			// SetLevelRequest needs far less than 128 bytes to fit
+			int length = position - lengthOffset - 1;
+			if (length > 0x7f)
+			{
+				throw new IllegalStateException(
+				        "SetLevelRequest too long for its length byte, length="
+				                + length);
+			}
+			output[lengthOffset] = (byte) length;
+		}
+		return position;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private byte[] getTemplate(V1.LevelType type, int channel)
+	{
+		if ((channel < 0) || (channel >= this.maxChannels))
+		{
+			return createTemplate(type, channel);
+		}
+		int index = type.ordinal() * this.maxChannels + channel;
+		byte[] template = this.templates[index];
+		if (null == template)
+		{
+			template = createTemplate(type, channel);
+			this.templates[index] = template;
+		}
+		return template;
+	}
+
+	private byte[] createTemplate(V1.LevelType type, int channel)
+	{
+		int bodySize = CodedOutputStream.computeEnumSize(
+		        V1.SetLevelRequest.TYPE_FIELD_NUMBER, type.getNumber())
+		        + CodedOutputStream.computeUInt32Size(
+		                V1.SetLevelRequest.CHANNEL_FIELD_NUMBER, channel);
+		byte[] template = new byte[this.lengthOffset + 1 + bodySize];
+		try
+		{
+			// fields in number order, the same as the generated code writes
+			CodedOutputStream stream = CodedOutputStream.newInstance(template);
+			stream.writeEnum(V1.Request.TYPE_FIELD_NUMBER,
+			        V1.RequestType.SETLEVEL.getNumber());
+			stream.writeTag(V1.Request.SETLEVEL_FIELD_NUMBER,
+			        WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			stream.writeRawVarint32(bodySize);
+			stream.writeEnum(V1.SetLevelRequest.TYPE_FIELD_NUMBER,
+			        type.getNumber());
+			stream.writeUInt32(V1.SetLevelRequest.CHANNEL_FIELD_NUMBER,
+			        channel);
+			stream.checkNoSpaceLeft();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return template;
+	}
+
+	private static int writeVarint(byte[] output, int position, int value)
+	{
+		while (0 != (value & ~0x7f))
+		{
+			output[position++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		output[position++] = (byte) value;
+		return position;
+	}
+}
@@ -0,0 +1,366 @@
+package com.jebussystems.levelingglass.control.v1;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import v1.V1;
+
+import com.jebussystems.levelingglass.util.EventLoop;
+import com.jebussystems.levelingglass.util.LogWrapper;
+import com.jebussystems.levelingglass.util.MetricsRegistry;
+
+/**
+ * Keeps track of the requests sent to the device so many can be outstanding
+ * at once. Each request is given a sequence number and held in a slot of a
+ * preallocated array until it completes, times out or the tracker is reset,
+ * so issuing and completing requests allocates nothing. A request is held
+ * as its type plus a long argument the caller packs whatever it needs to
+ * encode it into, and is encoded by the transmitter when it is written.
+ * <p>
+ * The V1 protocol has no request ids on the wire, but the link is a
+ * reliable, ordered stream and the device answers in the order it was
+ * written to, so each response belongs to the oldest request that hasn't
+ * been answered. That only holds while every request is written exactly
+ * once, so requests are never resent. A request that times out means the
+ * link is out of step with the device, and its callback has to reset the
+ * link rather than carry on.
+ * <p>
+ * Requests are issued and timed out on the event loop. Responses
+ * are completed on whichever thread reads them. A request completes exactly
+ * once, its callback being run by whichever side gets to it first.
+ */
+public class RequestTracker implements EventLoop.Dispatcher
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "control.v1.requesttracker";
+
+	// outstanding requests, must be a power of 2
+	public static final int DEFAULT_CAPACITY = 128;
+	public static final long DEFAULT_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS
+	        .toMillis(2);
+
+	private static final int NO_TIMER = -1;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Puts a request on the wire, returning false if it couldn't be. The
+	 * write itself must happen on the event loop after this returns, so no
+	 * response can arrive before the tracker has counted it.
+	 */
+	public interface Transmitter
+	{
+		boolean transmit(V1.RequestType type, long argument);
+	}
+
+	public interface Callback
+	{
+		/**
+		 * Called once per request with the device's response, which may
+		 * report failure, or with null if the request timed out.
+		 */
+		void requestCompleted(V1.RequestType type, long argument,
+		        V1.Response response);
+	}
+
+	enum Event
+	{
+		TIMEOUT
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final String name;
+	private final EventLoop eventLoop;
+	private final Transmitter transmitter;
+	private final int capacity;
+	private final int mask;
+	private volatile long timeoutInMillis = DEFAULT_TIMEOUT_IN_MILLIS;
+
+	// sequence + 1 of the request held in each slot, 0 when free
+	private final AtomicLongArray owners;
+	// written before the owner is set
+	private final V1.RequestType[] types;
+	private final long[] arguments;
+	private final Callback[] callbacks;
+	// event loop only
+	private final long[] deadlines;
+	private int timer = NO_TIMER;
+
+	// each request is written once, so this is also the next sequence,
+	// written by the event loop
+	private final AtomicLong transmitted = new AtomicLong();
+	// sequence of the next response, written by the thread reading responses
+	private final AtomicLong answered = new AtomicLong();
+
+	private final AtomicLong issued = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	// answers to requests that had already timed out
+	private final AtomicLong late = new AtomicLong();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public RequestTracker(String name, EventLoop eventLoop,
+	        Transmitter transmitter)
+	{
+		this(name, eventLoop, transmitter, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * The capacity must be a power of 2.
+	 */
+	public RequestTracker(String name, EventLoop eventLoop,
+	        Transmitter transmitter, int capacity)
+	{
+		LogWrapper.v(TAG, "RequestTracker::RequestTracker enter", "this=",
+		        this, "name=", name, "eventLoop=", eventLoop, "transmitter=",
+		        transmitter, "capacity=", capacity);
+		if ((capacity <= 0) || (0 != (capacity & (capacity - 1))))
+		{
+			throw new IllegalArgumentException(
+			        "capacity must be a power of 2, capacity=" + capacity);
+		}
+		this.name = name;
+		this.eventLoop = eventLoop;
+		this.transmitter = transmitter;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.owners = new AtomicLongArray(capacity);
+		this.types = new V1.RequestType[capacity];
+		this.arguments = new long[capacity];
+		this.callbacks = new Callback[capacity];
+		this.deadlines = new long[capacity];
+		MetricsRegistry.register("requests." + name, this);
+		LogWrapper.v(TAG, "RequestTracker::RequestTracker exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public void setTimeout(long timeoutInMillis)
+	{
+		this.timeoutInMillis = timeoutInMillis;
+	}
+
+	/**
+	 * Sends a request and tracks it until it completes. Returns false if it
+	 * couldn't be sent, either because too many requests are outstanding or
+	 * because the transmitter refused it, in which case the callback is never
+	 * called. Event loop only.
+	 */
+	public boolean issue(V1.RequestType type, long argument, Callback callback)
+	{
+		LogWrapper.v(TAG, "RequestTracker::issue enter", "this=", this,
+		        "type=", type, "callback=", callback);
+		long sequence = this.transmitted.get();
+		int slot = (int) (sequence & this.mask);
+		if (0 != this.owners.get(slot))
+		{
+			LogWrapper.e(TAG, "too many outstanding requests, tracker=", name);
+			return false;
+		}
+		this.types[slot] = type;
+		this.arguments[slot] = argument;
+		this.callbacks[slot] = callback;
+		this.owners.set(slot, sequence + 1);
+		if (false == this.transmitter.transmit(type, argument))
+		{
+			this.owners.set(slot, 0);
+			clearSlot(slot);
+			return false;
+		}
+		// the write is still queued on the event loop, so counting it now is
+		// in time for its response
+		this.deadlines[slot] = System.nanoTime()
+		        + TimeUnit.MILLISECONDS.toNanos(this.timeoutInMillis);
+		this.transmitted.set(sequence + 1);
+		this.issued.incrementAndGet();
+		armTimer();
+		LogWrapper.v(TAG, "RequestTracker::issue exit");
+		return true;
+	}
+
+	/**
+	 * Matches a response to the request it answers and runs that request's
+	 * callback. Returns false if the response can't belong to anything sent,
+	 * which means the link is out of step with the device. Called by the
+	 * thread reading responses.
+	 */
+	public boolean complete(V1.Response response)
+	{
+		LogWrapper.v(TAG, "RequestTracker::complete enter", "this=", this,
+		        "response=", response);
+		long sequence = this.answered.get();
+		if (sequence >= this.transmitted.get())
+		{
+			LogWrapper.e(TAG, "response received with nothing outstanding");
+			return false;
+		}
+		this.answered.set(sequence + 1);
+
+		int slot = (int) (sequence & this.mask);
+		if (sequence + 1 != this.owners.get(slot))
+		{
+			// it timed out, and the link is being reset because of it
+			this.late.incrementAndGet();
+			LogWrapper.d(TAG, "ignoring late response, sequence=", sequence);
+			return true;
+		}
+		// take these before giving up the slot, it can be reused after
+		V1.RequestType type = this.types[slot];
+		long argument = this.arguments[slot];
+		Callback callback = this.callbacks[slot];
+		if ((null == type) || (null == callback))
+		{
+			// reset while we were looking at it
+			return true;
+		}
+		if (false == type.equals(response.getType()))
+		{
+			LogWrapper.e(TAG, "request + response types don't match");
+			return false;
+		}
+		if (false == this.owners.compareAndSet(slot, sequence + 1, 0))
+		{
+			// timed out while we were looking at it
+			return true;
+		}
+		this.completed.incrementAndGet();
+		callback.requestCompleted(type, argument, response);
+		LogWrapper.v(TAG, "RequestTracker::complete exit");
+		return true;
+	}
+
+	/**
+	 * Forgets everything outstanding without running any callbacks, for when
+	 * the link has gone down. Event loop only.
+	 */
+	public void reset()
+	{
+		LogWrapper.v(TAG, "RequestTracker::reset enter", "this=", this);
+		for (int slot = 0; slot < this.capacity; slot++)
+		{
+			this.owners.set(slot, 0);
+			clearSlot(slot);
+		}
+		this.answered.set(this.transmitted.get());
+		if (NO_TIMER != this.timer)
+		{
+			this.eventLoop.cancel(this.timer);
+			this.timer = NO_TIMER;
+		}
+		LogWrapper.v(TAG, "RequestTracker::reset exit");
+	}
+
+	public int getNumOutstanding()
+	{
+		int outstanding = 0;
+		for (int slot = 0; slot < this.capacity; slot++)
+		{
+			if (0 != this.owners.get(slot))
+			{
+				outstanding++;
+			}
+		}
+		return outstanding;
+	}
+
+	public long getNumCompleted()
+	{
+		return completed.get();
+	}
+
+	public long getNumTimedOut()
+	{
+		return timedOut.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + " [issued=" + issued.get() + " completed="
+		        + completed.get() + " outstanding=" + getNumOutstanding()
+		        + " timedOut=" + timedOut.get() + " late=" + late.get() + "]";
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// EventLoop.Dispatcher implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void dispatchEvent(Enum<?> event, Object data)
+	{
+		LogWrapper.v(TAG, "RequestTracker::dispatchEvent enter", "this=",
+		        this, "event=", event);
+		this.timer = NO_TIMER;
+		long now = System.nanoTime();
+		long next = Long.MAX_VALUE;
+		for (int slot = 0; slot < this.capacity; slot++)
+		{
+			long owner = this.owners.get(slot);
+			if (0 == owner)
+			{
+				continue;
+			}
+			long remaining = this.deadlines[slot] - now;
+			if (remaining > 0)
+			{
+				next = Math.min(next, remaining);
+				continue;
+			}
+			V1.RequestType type = this.types[slot];
+			long argument = this.arguments[slot];
+			Callback callback = this.callbacks[slot];
+			if (true == this.owners.compareAndSet(slot, owner, 0))
+			{
+				LogWrapper.w(TAG, "request timed out, type=", type,
+				        "argument=", argument);
+				this.timedOut.incrementAndGet();
+				callback.requestCompleted(type, argument, null);
+			}
+		}
+		if (Long.MAX_VALUE != next)
+		{
+			// round up so we don't wake just short of the deadline
+			this.timer = this.eventLoop.schedule(this, Event.TIMEOUT, null,
+			        TimeUnit.NANOSECONDS.toMillis(next) + 1);
+		}
+		LogWrapper.v(TAG, "RequestTracker::dispatchEvent exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Makes sure a timer is running. One timer covers every request, it goes
+	 * off at the earliest deadline and looks at them all.
+	 */
+	private void armTimer()
+	{
+		if (NO_TIMER != this.timer)
+		{
+			return;
+		}
+		this.timer = this.eventLoop.schedule(this, Event.TIMEOUT, null,
+		        this.timeoutInMillis);
+	}
+
+	private void clearSlot(int slot)
+	{
+		this.types[slot] = null;
+		this.callbacks[slot] = null;
+	}
+}
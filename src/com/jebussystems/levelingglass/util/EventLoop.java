@@ -0,0 +1,483 @@
+package com.jebussystems.levelingglass.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single consumer event loop shared by the SPP and control layers. Events
+ * are a dispatcher, an event and a data object written into preallocated
+ * slots of a ring, so posting one claims a sequence number with a CAS and
+ * stores three references, and nothing is allocated or locked. The loop
+ * thread drains whatever has been published in batches and runs any timers
+ * that have come due in between.
+ * <p>
+ * Any thread can post. A producer that finds the ring full waits for the
+ * loop to make room, except the loop thread itself, which can't wait on
+ * itself, so its event is dropped and logged. Timers are only scheduled and
+ * cancelled from the loop thread.
+ * <p>
+ * The time each posted event spends in the ring, from being posted to being
+ * dispatched, is kept in a histogram, see getDispatchLatency().
+ */
+public class EventLoop implements Runnable
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "util.eventloop";
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+	// at most 256, the slot index is the low byte of a timer handle
+	private static final int MAX_TIMERS = 16;
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+	// how long a PARK loop sleeps between looks at the ring
+	private static final long PARK_IN_NANOS = 50000;
+	// how long a producer sleeps waiting for room in a full ring
+	private static final long FULL_PARK_IN_NANOS = 1000;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	public interface Dispatcher
+	{
+		void dispatchEvent(Enum<?> event, Object data);
+	}
+
+	/**
+	 * What the loop thread does when there is nothing to dispatch.
+	 */
+	public enum WaitStrategy
+	{
+		// spin, lowest latency, burns a core
+		BUSY_SPIN,
+		// spin but give up the cpu each time round
+		YIELD,
+		// sleep briefly between looks, producers never have to wake it
+		PARK,
+		// sleep until woken by a producer or a timer, the lowest cpu
+		BLOCK
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final String name;
+	private final int capacity;
+	private final int mask;
+	private final Dispatcher[] dispatchers;
+	private final Enum<?>[] events;
+	private final Object[] data;
+	// when each slot's event was posted
+	private final long[] postTimes;
+	// sequence + 1 of the event held in each slot, written last
+	private final AtomicLongArray published;
+	// next sequence to hand to a producer
+	private final AtomicLong claimed = new AtomicLong();
+	// next sequence the loop will dispatch
+	private final AtomicLong consumed = new AtomicLong();
+	private volatile WaitStrategy waitStrategy;
+	private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private final Object waitLock = new Object();
+	private volatile boolean waiting = false;
+	private volatile boolean running = false;
+	private volatile Thread thread = null;
+
+	// timers, only touched on the loop thread
+	private final Dispatcher[] timerDispatchers = new Dispatcher[MAX_TIMERS];
+	private final Enum<?>[] timerEvents = new Enum<?>[MAX_TIMERS];
+	private final Object[] timerData = new Object[MAX_TIMERS];
+	private final long[] timerDeadlines = new long[MAX_TIMERS];
+	private final int[] timerHandles = new int[MAX_TIMERS];
+	private int timerGeneration = 0;
+
+	// written by the loop thread only
+	private volatile long batches = 0;
+	private volatile int largestBatch = 0;
+	private volatile long timersFired = 0;
+	private final AtomicLong fullWaits = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	// events whose dispatcher threw
+	private final AtomicLong failures = new AtomicLong();
+	private final Histogram dispatchLatency = new Histogram();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public EventLoop(String name)
+	{
+		this(name, DEFAULT_CAPACITY, WaitStrategy.BLOCK);
+	}
+
+	/**
+	 * The capacity must be a power of 2.
+	 */
+	public EventLoop(String name, int capacity, WaitStrategy waitStrategy)
+	{
+		LogWrapper.v(TAG, "EventLoop::EventLoop enter", "this=", this,
+		        "name=", name, "capacity=", capacity, "waitStrategy=",
+		        waitStrategy);
+		if ((capacity <= 0) || (0 != (capacity & (capacity - 1))))
+		{
+			throw new IllegalArgumentException(
+			        "capacity must be a power of 2, capacity=" + capacity);
+		}
+		this.name = name;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.dispatchers = new Dispatcher[capacity];
+		this.events = new Enum<?>[capacity];
+		this.data = new Object[capacity];
+		this.postTimes = new long[capacity];
+		this.published = new AtomicLongArray(capacity);
+		this.waitStrategy = waitStrategy;
+		MetricsRegistry.register("eventloop." + name, this);
+		LogWrapper.v(TAG, "EventLoop::EventLoop exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public synchronized void start()
+	{
+		LogWrapper.v(TAG, "EventLoop::start enter", "this=", this);
+		if (false == this.running)
+		{
+			this.running = true;
+			this.thread = new Thread(this, name);
+			this.thread.start();
+		}
+		LogWrapper.v(TAG, "EventLoop::start exit");
+	}
+
+	/**
+	 * Stops the loop once the current batch is done, anything still in the
+	 * ring isn't dispatched.
+	 */
+	public synchronized void stop()
+	{
+		LogWrapper.v(TAG, "EventLoop::stop enter", "this=", this);
+		this.running = false;
+		wake();
+		LogWrapper.v(TAG, "EventLoop::stop exit");
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy)
+	{
+		this.waitStrategy = waitStrategy;
+		// a blocked loop needs to pick up the new strategy
+		wake();
+	}
+
+	/**
+	 * Most events dispatched before the loop checks its timers.
+	 */
+	public void setMaxBatchSize(int maxBatchSize)
+	{
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public boolean isLoopThread()
+	{
+		return Thread.currentThread() == this.thread;
+	}
+
+	/**
+	 * Queues an event to be dispatched on the loop thread, in order with
+	 * everything else posted. Returns false if it had to be dropped.
+	 */
+	public boolean post(Dispatcher dispatcher, Enum<?> event, Object data)
+	{
+		long sequence;
+		while (true)
+		{
+			sequence = this.claimed.get();
+			if (sequence - this.consumed.get() >= this.capacity)
+			{
+				if (true == isLoopThread())
+				{
+					this.dropped.incrementAndGet();
+					LogWrapper.wtf(TAG, "ring full, dropping event=", event,
+					        "loop=", name);
+					return false;
+				}
+				// wait for the loop to catch up
+				this.fullWaits.incrementAndGet();
+				LockSupport.parkNanos(FULL_PARK_IN_NANOS);
+			}
+			else if (true == this.claimed.compareAndSet(sequence,
+			        sequence + 1))
+			{
+				break;
+			}
+		}
+
+		int slot = (int) (sequence & this.mask);
+		this.dispatchers[slot] = dispatcher;
+		this.events[slot] = event;
+		this.data[slot] = data;
+		this.postTimes[slot] = System.nanoTime();
+		this.published.set(slot, sequence + 1);
+
+		// only a blocked loop needs waking
+		if (true == this.waiting)
+		{
+			wake();
+		}
+		return true;
+	}
+
+	/**
+	 * Dispatches an event on the loop thread after a delay. Returns a handle
+	 * that can be given to cancel(). Loop thread only.
+	 */
+	public int schedule(Dispatcher dispatcher, Enum<?> event, Object data,
+	        long delayInMillis)
+	{
+		checkLoopThread();
+		for (int timer = 0; timer < MAX_TIMERS; timer++)
+		{
+			if (null != this.timerDispatchers[timer])
+			{
+				continue;
+			}
+			this.timerGeneration = (this.timerGeneration + 1) & 0xffffff;
+			int handle = (this.timerGeneration << 8) | timer;
+			this.timerDispatchers[timer] = dispatcher;
+			this.timerEvents[timer] = event;
+			this.timerData[timer] = data;
+			this.timerDeadlines[timer] = System.nanoTime() + delayInMillis
+			        * 1000000;
+			this.timerHandles[timer] = handle;
+			return handle;
+		}
+		throw new IllegalStateException("out of timers, loop=" + name);
+	}
+
+	/**
+	 * Returns false if the timer has already fired or been cancelled. Loop
+	 * thread only.
+	 */
+	public boolean cancel(int handle)
+	{
+		checkLoopThread();
+		int timer = handle & 0xff;
+		if ((null == this.timerDispatchers[timer])
+		        || (handle != this.timerHandles[timer]))
+		{
+			return false;
+		}
+		clearTimer(timer);
+		return true;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Time from post() to the event being dispatched, timers aren't included.
+	 */
+	public Histogram getDispatchLatency()
+	{
+		return dispatchLatency;
+	}
+
+	@Override
+	public String toString()
+	{
+		long posted = this.claimed.get();
+		return name + " [posted=" + posted + " pending="
+		        + (posted - this.consumed.get()) + " batches=" + batches
+		        + " largestBatch=" + largestBatch + " timersFired="
+		        + timersFired + " fullWaits=" + fullWaits.get()
+		        + " dropped=" + dropped.get() + " failures=" + failures.get()
+		        + " latency=" + dispatchLatency
+		        + "]";
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// Runnable implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void run()
+	{
+		LogWrapper.v(TAG, "EventLoop::run enter", "this=", this);
+		long next = this.consumed.get();
+		while (true == this.running)
+		{
+			int limit = this.maxBatchSize;
+			int count = 0;
+			while (count < limit)
+			{
+				int slot = (int) (next & this.mask);
+				if (next + 1 != this.published.get(slot))
+				{
+					break;
+				}
+				Dispatcher dispatcher = this.dispatchers[slot];
+				Enum<?> event = this.events[slot];
+				Object eventData = this.data[slot];
+				long postTime = this.postTimes[slot];
+				this.dispatchers[slot] = null;
+				this.events[slot] = null;
+				this.data[slot] = null;
+				// free the slot before dispatching so the handler can post
+				next++;
+				this.consumed.lazySet(next);
+				count++;
+				this.dispatchLatency.record(System.nanoTime() - postTime);
+				dispatch(dispatcher, event, eventData);
+			}
+			if (0 != count)
+			{
+				this.batches++;
+				this.largestBatch = Math.max(this.largestBatch, count);
+			}
+
+			long deadline = runTimers();
+			if (0 == count)
+			{
+				idle(next, deadline);
+			}
+		}
+		LogWrapper.v(TAG, "EventLoop::run exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void dispatch(Dispatcher dispatcher, Enum<?> event, Object data)
+	{
+		try
+		{
+			dispatcher.dispatchEvent(event, data);
+		}
+		catch (RuntimeException e)
+		{
+			// one bad event mustn't take the loop down
+			this.failures.incrementAndGet();
+			LogWrapper.wtf(TAG, e);
+		}
+	}
+
+	/**
+	 * Fires the timers that are due and returns when the next one is.
+	 */
+	private long runTimers()
+	{
+		long deadline = NO_DEADLINE;
+		long now = 0;
+		for (int timer = 0; timer < MAX_TIMERS; timer++)
+		{
+			Dispatcher dispatcher = this.timerDispatchers[timer];
+			if (null == dispatcher)
+			{
+				continue;
+			}
+			if (0 == now)
+			{
+				now = System.nanoTime();
+			}
+			if (this.timerDeadlines[timer] - now > 0)
+			{
+				deadline = Math.min(deadline, this.timerDeadlines[timer]);
+				continue;
+			}
+			Enum<?> event = this.timerEvents[timer];
+			Object eventData = this.timerData[timer];
+			clearTimer(timer);
+			this.timersFired++;
+			dispatch(dispatcher, event, eventData);
+		}
+		return deadline;
+	}
+
+	private void idle(long next, long deadline)
+	{
+		switch (this.waitStrategy)
+		{
+			case BUSY_SPIN:
+				break;
+			case YIELD:
+				Thread.yield();
+				break;
+			case PARK:
+				LockSupport.parkNanos(Math.min(PARK_IN_NANOS,
+				        deadline - System.nanoTime()));
+				break;
+			default:
+				synchronized (this.waitLock)
+				{
+					// producers check this after publishing, so either they
+					// see it or we see their event
+					this.waiting = true;
+					try
+					{
+						int slot = (int) (next & this.mask);
+						if ((next + 1 == this.published.get(slot))
+						        || (false == this.running)
+						        || (WaitStrategy.BLOCK != this.waitStrategy))
+						{
+							return;
+						}
+						if (NO_DEADLINE == deadline)
+						{
+							this.waitLock.wait();
+						}
+						else
+						{
+							long remaining = deadline - System.nanoTime();
+							if (remaining > 0)
+							{
+								this.waitLock.wait(remaining / 1000000,
+								        (int) (remaining % 1000000));
+							}
+						}
+					}
+					catch (InterruptedException e)
+					{
+						// go round again, stop() clears running
+					}
+					finally
+					{
+						this.waiting = false;
+					}
+				}
+				break;
+		}
+	}
+
+	private void wake()
+	{
+		synchronized (this.waitLock)
+		{
+			this.waitLock.notifyAll();
+		}
+	}
+
+	private void clearTimer(int timer)
+	{
+		this.timerDispatchers[timer] = null;
+		this.timerEvents[timer] = null;
+		this.timerData[timer] = null;
+	}
+
+	private void checkLoopThread()
+	{
+		if (false == isLoopThread())
+		{
+			throw new IllegalStateException(
+			        "timers belong to the loop thread, loop=" + name);
+		}
+	}
+}
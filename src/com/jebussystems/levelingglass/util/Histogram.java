@@ -0,0 +1,95 @@
+package com.jebussystems.levelingglass.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations. Values are kept in power of 2
+ * microsecond buckets, so recording is a few atomic adds and percentiles are
+ * reported as the upper bound of the bucket they fall in.
+ */
+public class Histogram
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	// the last bucket holds everything from ~36 minutes up
+	private static final int BUCKETS = 32;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public void record(long nanos)
+	{
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros),
+		        BUCKETS - 1);
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		long current;
+		while (micros > (current = max.get()))
+		{
+			if (true == max.compareAndSet(current, micros))
+			{
+				break;
+			}
+		}
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public long getAverageInMicros()
+	{
+		long samples = count.get();
+		return (0 == samples) ? 0 : sum.get() / samples;
+	}
+
+	public long getMaxInMicros()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Upper bound, in microseconds, of the bucket the given fraction of the
+	 * samples fall at or below.
+	 */
+	public long getPercentileInMicros(double fraction)
+	{
+		long target = (long) Math.ceil(count.get() * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += buckets.get(i);
+			if ((seen >= target) && (0 != seen))
+			{
+				return (0 == i) ? 0 : (1L << i) - 1;
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "[count=" + getCount() + " avg=" + getAverageInMicros()
+		        + "us p50<=" + getPercentileInMicros(0.5) + "us p99<="
+		        + getPercentileInMicros(0.99) + "us max=" + getMaxInMicros()
+		        + "us]";
+	}
+}
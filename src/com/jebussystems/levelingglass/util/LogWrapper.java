@@ -2,37 +2,214 @@ package com.jebussystems.levelingglass.util;
 
 import android.util.Log;
 
+/**
+ * Thin wrapper around android.util.Log that only builds the log string once
+ * the level check has passed. Arguments are concatenated with a space between
+ * them, except after a string ending in '=' so name/value pairs read as
+ * name=value.
+ * <p>
+ * v() and d() are called on the data path, so they have fixed-arity
+ * overloads: a filtered call costs the level check and nothing else, where
+ * the varargs form allocates its array before the check can run. Arguments
+ * should be passed as objects rather than pre-rendered strings so
+ * toString() is only called on them when the log is actually written. When
+ * even that isn't lazy enough, pass a {@link Deferred} or guard the call with
+ * {@link #isVerboseEnabled()}/{@link #isDebugEnabled()}. Primitive arguments
+ * are boxed before the level check can run, so hot calls that pass them are
+ * always guarded.
+ */
 public class LogWrapper
 {
+	/**
+	 * Log level that filters everything, wtf() included. Off the device the
+	 * android.jar Log methods throw, so anything run on a plain JVM uses it.
+	 */
+	public static final int SILENT = Log.ASSERT + 1;
+
 	private static int logLevel = Log.DEBUG;
 
+	/**
+	 * An argument that is only computed when the log is written.
+	 */
+	public interface Deferred
+	{
+		// methods
+		public Object get();
+	}
+
 	public static void setLogLevel(int logLevel)
 	{
 		LogWrapper.logLevel = logLevel;
 	}
 
+	public static boolean isVerboseEnabled()
+	{
+		return logLevel <= Log.VERBOSE;
+	}
+
+	public static boolean isDebugEnabled()
+	{
+		return logLevel <= Log.DEBUG;
+	}
+
+	public static boolean isWarnEnabled()
+	{
+		return logLevel <= Log.WARN;
+	}
+
+	public static boolean isErrorEnabled()
+	{
+		return logLevel <= Log.ERROR;
+	}
+
+	public static void v(String tag, Object a0)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0));
+	}
+
+	public static void v(String tag, Object a0, Object a1)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0, a1));
+	}
+
+	public static void v(String tag, Object a0, Object a1, Object a2)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0, a1, a2));
+	}
+
+	public static void v(String tag, Object a0, Object a1, Object a2, Object a3)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0, a1, a2, a3));
+	}
+
+	public static void v(String tag, Object a0, Object a1, Object a2, Object a3,
+	        Object a4)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0, a1, a2, a3, a4));
+	}
+
+	public static void v(String tag, Object a0, Object a1, Object a2, Object a3,
+	        Object a4, Object a5)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0, a1, a2, a3, a4, a5));
+	}
+
+	public static void v(String tag, Object a0, Object a1, Object a2, Object a3,
+	        Object a4, Object a5, Object a6)
+	{
+		if (logLevel > Log.VERBOSE)
+		{
+			return;
+		}
+		Log.v(tag, concatenateArgs(a0, a1, a2, a3, a4, a5, a6));
+	}
+
 	public static void v(String tag, Object... args)
 	{
-		// filter log if log level is too low
 		if (logLevel > Log.VERBOSE)
 		{
 			return;
 		}
-		// generate the log
-		String log = concatenateArgs(args);
-		Log.wtf(tag, log);
+		Log.v(tag, concatenateArgs(args));
+	}
+
+	public static void d(String tag, Object a0)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0));
+	}
+
+	public static void d(String tag, Object a0, Object a1)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0, a1));
+	}
+
+	public static void d(String tag, Object a0, Object a1, Object a2)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0, a1, a2));
+	}
+
+	public static void d(String tag, Object a0, Object a1, Object a2, Object a3)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0, a1, a2, a3));
+	}
+
+	public static void d(String tag, Object a0, Object a1, Object a2, Object a3,
+	        Object a4)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0, a1, a2, a3, a4));
+	}
+
+	public static void d(String tag, Object a0, Object a1, Object a2, Object a3,
+	        Object a4, Object a5)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0, a1, a2, a3, a4, a5));
+	}
+
+	public static void d(String tag, Object a0, Object a1, Object a2, Object a3,
+	        Object a4, Object a5, Object a6)
+	{
+		if (logLevel > Log.DEBUG)
+		{
+			return;
+		}
+		Log.d(tag, concatenateArgs(a0, a1, a2, a3, a4, a5, a6));
 	}
 
 	public static void d(String tag, Object... args)
 	{
-		// filter log if log level is too low
 		if (logLevel > Log.DEBUG)
 		{
 			return;
 		}
-		// generate the log
-		String log = concatenateArgs(args);
-		Log.d(tag, log);
+		Log.d(tag, concatenateArgs(args));
 	}
 
 	public static void w(String tag, Object... args)
@@ -61,18 +238,28 @@ public class LogWrapper
 
 	public static void wtf(String tag, Object... args)
 	{
+		// only filtered when logging is off altogether
+		if (logLevel > Log.ASSERT)
+		{
+			return;
+		}
 		// generate the log
 		String log = concatenateArgs(args);
 		Log.wtf(tag, log);
 	}
 	
-	private static String concatenateArgs(Object ... args)
+	static String concatenateArgs(Object ... args)
 	{
 		// create a buffer for the log
 		StringBuffer buffer = new StringBuffer();
 		// append all args
 		for (Object arg : args)
 		{
+			// work out deferred values now that they're needed
+			if (arg instanceof Deferred)
+			{
+				arg = ((Deferred) arg).get();
+			}
 			// output the arg as a string
 			buffer.append(arg);
 			// only output a space if this isn't a parameter arg
@@ -0,0 +1,45 @@
+package com.jebussystems.levelingglass.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Named metrics objects, so everything being measured can be reported in one
+ * go. Anything can be registered, the report uses toString().
+ */
+public class MetricsRegistry
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final Map<String, Object> metrics = new ConcurrentSkipListMap<String, Object>();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Registering under a name that is already taken replaces the old entry.
+	 */
+	public static void register(String name, Object metric)
+	{
+		metrics.put(name, metric);
+	}
+
+	public static Object get(String name)
+	{
+		return metrics.get(name);
+	}
+
+	public static String report()
+	{
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Object> entry : metrics.entrySet())
+		{
+			builder.append(entry.getKey()).append(' ')
+			        .append(entry.getValue()).append('\n');
+		}
+		return builder.toString();
+	}
+}
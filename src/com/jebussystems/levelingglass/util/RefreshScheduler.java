@@ -0,0 +1,176 @@
+package com.jebussystems.levelingglass.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Coalesces refresh requests from any thread into at most one refresh per
+ * display frame on a handler's thread. Requests that arrive while a refresh
+ * is already pending are merged into it; requests made while stopped are
+ * dropped. Choreographer does this on newer platforms, this works back to
+ * the oldest one we support.
+ */
+public class RefreshScheduler implements Runnable
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "util.refreshscheduler";
+
+	// 60Hz
+	public static final long DEFAULT_FRAME_INTERVAL_IN_MILLIS = 16;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final Handler handler;
+	private final Runnable refresh;
+	private final long frameIntervalInMillis;
+	private final AtomicBoolean pending = new AtomicBoolean(false);
+	private volatile boolean running = false;
+	private volatile long lastRefreshTime = 0;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong merged = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile long refreshes = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public RefreshScheduler(Handler handler, Runnable refresh)
+	{
+		this(handler, refresh, DEFAULT_FRAME_INTERVAL_IN_MILLIS);
+	}
+
+	public RefreshScheduler(Handler handler, Runnable refresh,
+	        long frameIntervalInMillis)
+	{
+		LogWrapper.v(TAG, "RefreshScheduler::RefreshScheduler enter", "this=",
+		        this, "handler=", handler, "refresh=", refresh,
+		        "frameIntervalInMillis=", frameIntervalInMillis);
+		this.handler = handler;
+		this.refresh = refresh;
+		this.frameIntervalInMillis = frameIntervalInMillis;
+		LogWrapper.v(TAG, "RefreshScheduler::RefreshScheduler exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Call on the handler's thread.
+	 */
+	public void start()
+	{
+		this.running = true;
+	}
+
+	/**
+	 * Call on the handler's thread. A refresh that is still pending is
+	 * cancelled and counted as dropped.
+	 */
+	public void stop()
+	{
+		this.running = false;
+		this.handler.removeCallbacks(this);
+		if (true == this.pending.getAndSet(false))
+		{
+			this.dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Safe to call from any thread, and cheap enough to call for every
+	 * notification.
+	 */
+	public void requestRefresh()
+	{
+		this.requests.incrementAndGet();
+		if (false == this.running)
+		{
+			this.dropped.incrementAndGet();
+			return;
+		}
+		if (false == this.pending.compareAndSet(false, true))
+		{
+			// the pending refresh will pick this one up
+			this.merged.incrementAndGet();
+			return;
+		}
+		// hold off until a frame interval after the last refresh
+		long next = this.lastRefreshTime + this.frameIntervalInMillis;
+		if (next <= SystemClock.uptimeMillis())
+		{
+			this.handler.post(this);
+		}
+		else
+		{
+			this.handler.postAtTime(this, next);
+		}
+	}
+
+	public long getRequestCount()
+	{
+		return requests.get();
+	}
+
+	public long getMergedCount()
+	{
+		return merged.get();
+	}
+
+	public long getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	public long getRefreshCount()
+	{
+		return refreshes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RefreshScheduler [requests=" + getRequestCount()
+		        + " refreshes=" + getRefreshCount() + " merged="
+		        + getMergedCount() + " dropped=" + getDroppedCount() + "]";
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// Runnable implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void run()
+	{
+		// clear first so anything arriving during the refresh gets its own
+		this.pending.set(false);
+		if (false == this.running)
+		{
+			return;
+		}
+		this.lastRefreshTime = SystemClock.uptimeMillis();
+		this.refreshes++;
+		this.refresh.run();
+	}
+}
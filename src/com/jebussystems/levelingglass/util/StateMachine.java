@@ -3,6 +3,13 @@ package com.jebussystems.levelingglass.util;
 import java.util.EnumMap;
 import java.util.Map;
 
+/**
+ * Handlers are added for every state/event pair and the machine is then
+ * built, which checks that no pair was left out and compiles the handlers
+ * into a table indexed by state + event ordinal. Instances can only be
+ * created once the machine is built, and dispatching an event is two array
+ * loads.
+ */
 public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 {
 	// /////////////////////////////////////////////////////////////////////////
@@ -25,7 +32,10 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 
 	private final Class<E> eventClass;
 	private final S defaultState;
+	private final int traceSource;
 	private final Map<S, Map<E, Handler<S, O>>> handlers;
+	// [state ordinal][event ordinal], set once built
+	private volatile Handler<S, O>[][] table = null;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// constructors
@@ -42,6 +52,9 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 		        defaultState.getDeclaringClass());
 		this.defaultState = defaultState;
 		this.eventClass = eventClass;
+		this.traceSource = TraceRecorder.registerSource(getStateClass()
+		        .getName(), getStateClass().getEnumConstants(),
+		        eventClass.getEnumConstants());
 
 		LogWrapper.v(TAG, "StateMachine::StateMachine exit");
 	}
@@ -53,9 +66,13 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 	public void addHandler(S state, E event, StateMachine.Handler<S, O> handler)
 	{
 		LogWrapper.v(TAG, "StateMachine::addHandler enter", "this=", this,
-		        "S=", getStateClass(), "E=" + getEventClass(), "state=", state,
+		        "S=", getStateClass(), "E=", getEventClass(), "state=", state,
 		        "event=", event, "handler=", handler);
 
+		if (null != this.table)
+		{
+			throw new IllegalStateException("state machine already built");
+		}
 		Map<E, Handler<S, O>> subHandlers = this.handlers.get(state);
 		if (null == subHandlers)
 		{
@@ -74,6 +91,51 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 		LogWrapper.v(TAG, "StateMachine::addHandler exit");
 	}
 
+	/**
+	 * Checks every state has a handler for every event and compiles the
+	 * dispatch table. Throws IllegalStateException naming the missing pairs,
+	 * so a gap shows up when the machine is set up rather than when the event
+	 * eventually arrives.
+	 */
+	@SuppressWarnings("unchecked")
+	public void build()
+	{
+		LogWrapper.v(TAG, "StateMachine::build enter", "this=", this, "S=",
+		        getStateClass(), "E=", getEventClass());
+
+		S[] states = getStateClass().getEnumConstants();
+		E[] events = getEventClass().getEnumConstants();
+		Handler<S, O>[][] compiled = new Handler[states.length][events.length];
+		StringBuilder missing = new StringBuilder();
+		for (S state : states)
+		{
+			Map<E, Handler<S, O>> subHandlers = this.handlers.get(state);
+			for (E event : events)
+			{
+				Handler<S, O> handler = (null == subHandlers) ? null
+				        : subHandlers.get(event);
+				if (null == handler)
+				{
+					missing.append(' ').append(state).append('/')
+					        .append(event);
+					continue;
+				}
+				compiled[state.ordinal()][event.ordinal()] = handler;
+			}
+		}
+		if (0 != missing.length())
+		{
+			LogWrapper.wtf(TAG, "handlers missing for S=", getStateClass(),
+			        "pairs=", missing);
+			throw new IllegalStateException("handlers missing for S="
+			        + getStateClass() + " E=" + getEventClass() + ":"
+			        + missing);
+		}
+		this.table = compiled;
+
+		LogWrapper.v(TAG, "StateMachine::build exit");
+	}
+
 	public Instance createInstance(O object)
 	{
 		LogWrapper
@@ -81,6 +143,11 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 		                "S=", getStateClass(), "E=", getEventClass(),
 		                "object=", object);
 
+		if (null == this.table)
+		{
+			throw new IllegalStateException("state machine not built");
+		}
+
 		Instance instance = new Instance(object, defaultState);
 
 		LogWrapper.v(TAG, "StateMachine::createInstance exit", "instance=",
@@ -99,6 +166,21 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 		return handler;
 	}
 
+	/**
+	 * For events that shouldn't arrive in a state but can, such as one that
+	 * was already queued when the state changed. They're logged and dropped.
+	 */
+	public Handler<S, O> createUnexpectedEventHandler()
+	{
+		LogWrapper.v(TAG, "StateMachine::createUnexpectedEventHandler enter",
+		        "this=", this, "S=", getStateClass(), "E=", getEventClass());
+		Handler<S, O> handler = new UnexpectedEventHandler<S, O>();
+
+		LogWrapper.v(TAG, "StateMachine::createUnexpectedEventHandler exit",
+		        "handler=", handler);
+		return handler;
+	}
+
 	public Class<E> getEventClass()
 	{
 		return eventClass;
@@ -113,38 +195,6 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 	// private methods
 	// /////////////////////////////////////////////////////////////////////////
 
-	private Handler<S, O> findHandler(S state, E event)
-	{
-		LogWrapper.v(TAG, "StateMachine::findHandler enter", "this=", this,
-		        "S=", getStateClass(), "E=", getEventClass(), "state=", state,
-		        "event=", event);
-
-		Map<E, Handler<S, O>> subHandlers = this.handlers.get(state);
-		if (null == subHandlers)
-		{
-			LogWrapper.wtf(TAG, "handler not found for state=", state,
-			        "class=", state.getClass(), "event=", event, "class=",
-			        event.getClass());
-			throw new IllegalStateException("handler not found for S="
-			        + getStateClass() + " E=" + getEventClass() + " state="
-			        + state + " event=" + event);
-		}
-		Handler<S, O> handler = subHandlers.get(event);
-		if (null == handler)
-		{
-			LogWrapper.wtf(TAG, "handler not found for state=", state,
-			        "class=", state.getClass(), "event=", event, "class=",
-			        event.getClass());
-			throw new IllegalStateException("handler not found for S="
-			        + getStateClass() + " E=" + getEventClass() + " state="
-			        + state + " event=" + event);
-		}
-
-		LogWrapper
-		        .v(TAG, "StateMachine::findHandler exit", "handler=", handler);
-		return handler;
-	}
-
 	// /////////////////////////////////////////////////////////////////////////
 	// inner classes
 	// /////////////////////////////////////////////////////////////////////////
@@ -152,14 +202,19 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 	public class Instance
 	{
 		private final O object;
+		// the outer table is volatile, keep our own copy for dispatch
+		private final Handler<S, O>[][] dispatch = table;
+		private final StateMachineMetrics<S, E> metrics = new StateMachineMetrics<S, E>(
+		        getStateClass(), getEventClass());
 		private S state;
+		private long stateEnteredAt = System.nanoTime();
 		private StateChangeListener<S> listener = null;
 
 		private Instance(O object, S initialState)
 		{
 			LogWrapper.v(TAG, "StateMachine::Instance::Instance enter",
-			        "this=", this, "S=", getStateClass(), "E="
-			                + getEventClass(), "initialState=" + initialState);
+			        "this=", this, "S=", getStateClass(), "E=",
+			        getEventClass(), "initialState=", initialState);
 			this.object = object;
 			this.state = initialState;
 			LogWrapper.v(TAG, "StateMachine::Instance::Instance exit");
@@ -175,28 +230,41 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 			return state;
 		}
 
+		public StateMachineMetrics<S, E> getMetrics()
+		{
+			return metrics;
+		}
+
 		public void setListener(StateChangeListener<S> listener)
 		{
 			LogWrapper.v(TAG, "StateMachine::Instance::addListener enter",
-			        "this=", this, "S=", getStateClass(), "E="
-			                + getEventClass());
+			        "this=", this, "S=", getStateClass(), "E=",
+			        getEventClass());
 			this.listener = listener;
 			LogWrapper.v(TAG, "StateMachine::Instance::addListener exit");
 		}
 
 		public <D> void evaluate(E event, Object data)
 		{
-			LogWrapper.v(TAG, "StateMachine::Instance::evaluate enter",
-			        "this=", this, "S=", getStateClass(), "E=",
-			        getEventClass(), "event=", event, "argument=", data);
-			// find the handler - this will throw an angry exception if no
-			// handler is found
-			Handler<S, O> handler = findHandler(getState(), event);
+			// this runs for every event so it only goes to the trace
+			TraceRecorder.record(TraceRecorder.STATE_EVENT, traceSource,
+			        this.state.ordinal(), event.ordinal());
+			// the build guarantees there's a handler
+			Handler<S, O> handler = dispatch[this.state.ordinal()][event
+			        .ordinal()];
+			long start = System.nanoTime();
 			S nextState = handler.handleEvent(getObject(), data);
+			long end = System.nanoTime();
+			metrics.recordHandler(event, end - start);
 			if ((null != nextState) && (false == nextState.equals(this.state)))
 			{
+				metrics.recordTransition(this.state, nextState, end
+				        - this.stateEnteredAt);
+				this.stateEnteredAt = end;
 				LogWrapper.d(TAG, "state transition => current state=",
 				        this.state, "next state=", nextState);
+				TraceRecorder.record(TraceRecorder.STATE_TRANSITION,
+				        traceSource, this.state.ordinal(), nextState.ordinal());
 
 				// trigger the listener
 				if (null != listener)
@@ -206,8 +274,6 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 				// update the state
 				this.state = nextState;
 			}
-
-			LogWrapper.v(TAG, "StateMachine::Instance::evaluate exit");
 		}
 
 	}
@@ -236,4 +302,16 @@ public class StateMachine<S extends Enum<S>, E extends Enum<E>, O>
 			return null;
 		}
 	}
+
+	private static class UnexpectedEventHandler<S, O> implements
+	        Handler<S, O>
+	{
+		@Override
+		public S handleEvent(O object, Object data)
+		{
+			LogWrapper.w(TAG, "unexpected event ignored, object=", object,
+			        "data=", data);
+			return null;
+		}
+	}
 }
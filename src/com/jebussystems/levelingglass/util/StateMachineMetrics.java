@@ -0,0 +1,106 @@
+package com.jebussystems.levelingglass.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * What a state machine instance has been doing: how often it has gone from
+ * each state to each other state, how long it stayed in a state each time,
+ * and how long the handlers for each event take to run. Written by the
+ * thread driving the machine and safe to read from any other.
+ */
+public class StateMachineMetrics<S extends Enum<S>, E extends Enum<E>>
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final S[] states;
+	private final E[] events;
+	// [from ordinal * states + to ordinal]
+	private final AtomicLongArray transitions;
+	private final Histogram[] dwellTimes;
+	private final Histogram[] handlerTimes;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public StateMachineMetrics(Class<S> stateClass, Class<E> eventClass)
+	{
+		this.states = stateClass.getEnumConstants();
+		this.events = eventClass.getEnumConstants();
+		this.transitions = new AtomicLongArray(states.length * states.length);
+		this.dwellTimes = new Histogram[states.length];
+		for (int i = 0; i < states.length; i++)
+		{
+			this.dwellTimes[i] = new Histogram();
+		}
+		this.handlerTimes = new Histogram[events.length];
+		for (int i = 0; i < events.length; i++)
+		{
+			this.handlerTimes[i] = new Histogram();
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public void recordTransition(S from, S to, long dwellInNanos)
+	{
+		transitions.incrementAndGet(from.ordinal() * states.length
+		        + to.ordinal());
+		dwellTimes[from.ordinal()].record(dwellInNanos);
+	}
+
+	public void recordHandler(E event, long nanos)
+	{
+		handlerTimes[event.ordinal()].record(nanos);
+	}
+
+	public long getTransitionCount(S from, S to)
+	{
+		return transitions.get(from.ordinal() * states.length + to.ordinal());
+	}
+
+	/**
+	 * How long the machine stayed in the state each time it left it.
+	 */
+	public Histogram getDwellTime(S state)
+	{
+		return dwellTimes[state.ordinal()];
+	}
+
+	public Histogram getHandlerTime(E event)
+	{
+		return handlerTimes[event.ordinal()];
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		for (S from : states)
+		{
+			builder.append("\n  ").append(from).append(" dwell=")
+			        .append(getDwellTime(from));
+			for (S to : states)
+			{
+				long count = getTransitionCount(from, to);
+				if (0 != count)
+				{
+					builder.append(" ->").append(to).append('=').append(count);
+				}
+			}
+		}
+		for (E event : events)
+		{
+			if (0 != getHandlerTime(event).getCount())
+			{
+				builder.append("\n  ").append(event).append(" handler=")
+				        .append(getHandlerTime(event));
+			}
+		}
+		return builder.toString();
+	}
+}
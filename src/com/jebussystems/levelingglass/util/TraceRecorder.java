@@ -0,0 +1,393 @@
+package com.jebussystems.levelingglass.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Always-on flight recorder for the connection + control paths. Each event
+ * is a timestamp, an event code, the source that recorded it and two int
+ * arguments, written into preallocated arrays that wrap around, so recording
+ * costs a counter increment and a few array stores and never allocates or
+ * formats anything. The last CAPACITY events can be dumped to a file on
+ * demand and turned back into text with decode(), on or off the device.
+ * <p>
+ * Recording is lock free and the dump doesn't stop writers; an entry that is
+ * overwritten while it is being copied is dropped rather than reported torn.
+ * Each slot is guarded by its sequence number the way a seqlock is: the
+ * writer zeroes it before touching the entry and publishes the entry's index
+ * + 1 once it's done, and the dump only keeps a copy if the sequence was the
+ * same, and non-zero, both before and after it.
+ */
+public class TraceRecorder
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "util.tracerecorder";
+
+	// number of events kept, must be a power of 2
+	public static final int CAPACITY = 4096;
+	private static final int MASK = CAPACITY - 1;
+
+	private static final int FILE_MAGIC = 0x4c475452;
+	private static final int FILE_VERSION = 1;
+
+	// event codes, the arguments are noted for each
+	// state + event ordinals of the source's state machine
+	public static final int STATE_EVENT = 0;
+	// old + new state ordinals
+	public static final int STATE_TRANSITION = 1;
+	public static final int CONNECTED = 2;
+	public static final int DISCONNECTED = 3;
+	// frame length
+	public static final int FRAME_RECEIVED = 4;
+	// frame length
+	public static final int FRAME_QUEUED = 5;
+	// bytes written
+	public static final int FLUSH = 6;
+	// identity hash of the object, to pair borrows with returns
+	public static final int POOL_BORROW = 7;
+	// identity hash of the object
+	public static final int POOL_RETURN = 8;
+	// request type
+	public static final int REQUEST_SENT = 9;
+	// response type, then 1 on success or 0 on failure
+	public static final int RESPONSE_RECEIVED = 10;
+	// sequence number of the published level snapshot
+	public static final int LEVELS_UPDATED = 11;
+
+	private static final String[] CODE_NAMES = { "STATE_EVENT",
+	        "STATE_TRANSITION", "CONNECTED", "DISCONNECTED", "FRAME_RECEIVED",
+	        "FRAME_QUEUED", "FLUSH", "POOL_BORROW", "POOL_RETURN",
+	        "REQUEST_SENT", "RESPONSE_RECEIVED", "LEVELS_UPDATED" };
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static class Source
+	{
+		private final String name;
+		private final String[] states;
+		private final String[] events;
+
+		public Source(String name, String[] states, String[] events)
+		{
+			this.name = name;
+			this.states = states;
+			this.events = events;
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static volatile boolean enabled = true;
+	private static final AtomicLong cursor = new AtomicLong();
+	// index + 1 of the event held in each slot, written last
+	private static final AtomicLongArray sequences = new AtomicLongArray(
+	        CAPACITY);
+	private static final long[] times = new long[CAPACITY];
+	// code in the high half, source in the low half
+	private static final int[] codes = new int[CAPACITY];
+	private static final int[] firsts = new int[CAPACITY];
+	private static final int[] seconds = new int[CAPACITY];
+	private static final List<Source> sources = new ArrayList<Source>();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static void setEnabled(boolean enabled)
+	{
+		TraceRecorder.enabled = enabled;
+	}
+
+	/**
+	 * Returns the id to record events against. Registering the same name
+	 * again hands back the same id.
+	 */
+	public static int registerSource(String name)
+	{
+		return registerSource(name, null, null);
+	}
+
+	/**
+	 * As above, for a state machine, so state and event ordinals can be
+	 * decoded back into names.
+	 */
+	public static int registerSource(String name, Enum<?>[] states,
+	        Enum<?>[] events)
+	{
+		synchronized (sources)
+		{
+			for (int id = 0; id < sources.size(); id++)
+			{
+				if (true == sources.get(id).name.equals(name))
+				{
+					return id;
+				}
+			}
+			sources.add(new Source(name, toNames(states), toNames(events)));
+			return sources.size() - 1;
+		}
+	}
+
+	public static void record(int code, int source)
+	{
+		record(code, source, 0, 0);
+	}
+
+	public static void record(int code, int source, int first)
+	{
+		record(code, source, first, 0);
+	}
+
+	public static void record(int code, int source, int first, int second)
+	{
+		if (false == enabled)
+		{
+			return;
+		}
+		long index = cursor.getAndIncrement();
+		int slot = (int) (index & MASK);
+		// mark the slot as being written before changing anything in it, an
+		// atomic swap rather than a set so none of the stores below can be
+		// moved ahead of it
+		sequences.getAndSet(slot, 0);
+		times[slot] = System.nanoTime();
+		codes[slot] = (code << 16) | (source & 0xffff);
+		firsts[slot] = first;
+		seconds[slot] = second;
+		// publish the entry for the dump
+		sequences.lazySet(slot, index + 1);
+	}
+
+	public static long getEventCount()
+	{
+		return cursor.get();
+	}
+
+	/**
+	 * Writes the events currently held, oldest first, along with the names
+	 * needed to decode them.
+	 */
+	public static void dump(OutputStream stream) throws IOException
+	{
+		LogWrapper.v(TAG, "TraceRecorder::dump enter", "stream=", stream);
+
+		// copy the entries out before anything else so as few as possible
+		// get overwritten while we work
+		long end = cursor.get();
+		long start = Math.max(0, end - CAPACITY);
+		int count = (int) (end - start);
+		long[] entryTimes = new long[count];
+		int[] entryCodes = new int[count];
+		int[] entryFirsts = new int[count];
+		int[] entrySeconds = new int[count];
+		int copied = 0;
+		for (long index = start; index < end; index++)
+		{
+			int slot = (int) (index & MASK);
+			if (index + 1 != sequences.get(slot))
+			{
+				// not written yet or already overwritten
+				continue;
+			}
+			entryTimes[copied] = times[slot];
+			entryCodes[copied] = codes[slot];
+			entryFirsts[copied] = firsts[slot];
+			entrySeconds[copied] = seconds[slot];
+			// a compare + set of the same value rather than a read, so the
+			// copies above can't be moved after the check
+			if (false == sequences.compareAndSet(slot, index + 1, index + 1))
+			{
+				// overwritten while we were copying it
+				continue;
+			}
+			copied++;
+		}
+		long dumpTime = System.nanoTime();
+		long dumpWallTime = System.currentTimeMillis();
+
+		DataOutputStream output = new DataOutputStream(stream);
+		output.writeInt(FILE_MAGIC);
+		output.writeInt(FILE_VERSION);
+		output.writeLong(dumpTime);
+		output.writeLong(dumpWallTime);
+		output.writeInt(CODE_NAMES.length);
+		for (String name : CODE_NAMES)
+		{
+			output.writeUTF(name);
+		}
+		synchronized (sources)
+		{
+			output.writeInt(sources.size());
+			for (Source source : sources)
+			{
+				output.writeUTF(source.name);
+				writeNames(output, source.states);
+				writeNames(output, source.events);
+			}
+		}
+		output.writeInt(copied);
+		for (int i = 0; i < copied; i++)
+		{
+			output.writeLong(entryTimes[i]);
+			output.writeInt(entryCodes[i]);
+			output.writeInt(entryFirsts[i]);
+			output.writeInt(entrySeconds[i]);
+		}
+		output.flush();
+
+		LogWrapper.d(TAG, "trace dumped, events=", copied, "recorded=", end);
+		LogWrapper.v(TAG, "TraceRecorder::dump exit");
+	}
+
+	/**
+	 * Turns a dump back into one line of text per event.
+	 */
+	public static void decode(InputStream stream, PrintStream output)
+	        throws IOException
+	{
+		DataInputStream input = new DataInputStream(stream);
+		if (FILE_MAGIC != input.readInt())
+		{
+			throw new IOException("not a trace dump");
+		}
+		int version = input.readInt();
+		if (FILE_VERSION != version)
+		{
+			throw new IOException("unsupported trace version=" + version);
+		}
+		long dumpTime = input.readLong();
+		long dumpWallTime = input.readLong();
+		String[] codeNames = readNames(input);
+		int sourceCount = input.readInt();
+		List<Source> dumpSources = new ArrayList<Source>(sourceCount);
+		for (int i = 0; i < sourceCount; i++)
+		{
+			dumpSources.add(new Source(input.readUTF(), readNames(input),
+			        readNames(input)));
+		}
+
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		int count = input.readInt();
+		long previous = 0;
+		for (int i = 0; i < count; i++)
+		{
+			long time = input.readLong();
+			int packed = input.readInt();
+			int first = input.readInt();
+			int second = input.readInt();
+
+			int code = packed >>> 16;
+			Source source = lookup(dumpSources, packed & 0xffff);
+			long wallTime = dumpWallTime - (dumpTime - time) / 1000000;
+			long delta = (0 == i) ? 0 : (time - previous) / 1000;
+			previous = time;
+
+			StringBuilder line = new StringBuilder();
+			line.append(format.format(new Date(wallTime)));
+			line.append(String.format(" +%8dus ", delta));
+			line.append(lookup(codeNames, code));
+			line.append(' ');
+			line.append((null == source) ? "?" : source.name);
+			switch (code)
+			{
+				case STATE_EVENT:
+					line.append(" state=").append(label(source, true, first));
+					line.append(" event=")
+					        .append(label(source, false, second));
+					break;
+				case STATE_TRANSITION:
+					line.append(" from=").append(label(source, true, first));
+					line.append(" to=").append(label(source, true, second));
+					break;
+				case CONNECTED:
+				case DISCONNECTED:
+					break;
+				case POOL_BORROW:
+				case POOL_RETURN:
+					line.append(" object=").append(Integer.toHexString(first));
+					break;
+				default:
+					line.append(' ').append(first).append(' ')
+					        .append(second);
+					break;
+			}
+			output.println(line);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static String[] toNames(Enum<?>[] values)
+	{
+		if (null == values)
+		{
+			return new String[0];
+		}
+		String[] names = new String[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			names[i] = values[i].name();
+		}
+		return names;
+	}
+
+	private static void writeNames(DataOutputStream output, String[] names)
+	        throws IOException
+	{
+		output.writeInt(names.length);
+		for (String name : names)
+		{
+			output.writeUTF(name);
+		}
+	}
+
+	private static String[] readNames(DataInputStream input)
+	        throws IOException
+	{
+		String[] names = new String[input.readInt()];
+		for (int i = 0; i < names.length; i++)
+		{
+			names[i] = input.readUTF();
+		}
+		return names;
+	}
+
+	private static Source lookup(List<Source> list, int id)
+	{
+		return (id < list.size()) ? list.get(id) : null;
+	}
+
+	private static String lookup(String[] names, int index)
+	{
+		return ((index >= 0) && (index < names.length)) ? names[index]
+		        : String.valueOf(index);
+	}
+
+	private static String label(Source source, boolean state, int ordinal)
+	{
+		if (null == source)
+		{
+			return String.valueOf(ordinal);
+		}
+		return lookup(state ? source.states : source.events, ordinal);
+	}
+}
@@ -0,0 +1,637 @@
+package com.jebussystems.levelingglass.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.pool.BaseObjectPool;
+import org.apache.commons.pool.PoolableObjectFactory;
+
+import android.util.Log;
+
+/**
+ * ObjectPool for objects that are borrowed on one thread and returned on
+ * another. Each thread keeps its own free list, which borrowObject() pops
+ * without any synchronization, and returned objects are pushed onto a lock
+ * free stack shared by all threads. When a thread's free list runs dry it
+ * takes the whole shared stack in one swap before falling back to creating a
+ * new object.
+ * <p>
+ * Every object gets a list node and a weak reference taken once when it is
+ * created, so neither path allocates once the pool has warmed up. An object
+ * the garbage collector reclaims while it is still borrowed was never given
+ * back and is counted as leaked, along with where it was borrowed if
+ * allocation sites are being captured. The pool can also cap the number of
+ * borrowed objects, see setMaxActive(), and the number kept idle, see
+ * setMaxIdle().
+ */
+public class TrackedObjectPool<T> extends BaseObjectPool<T>
+{
+	// /////////////////////////////////////////////////////////////////////////
+	// constants
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final String TAG = "util.trackedobjectpool";
+
+	private static final int MIN_TABLE_SIZE = 16;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// types
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * What borrowObject() does once max active objects are out.
+	 */
+	public enum ExhaustedPolicy
+	{
+		// wait for an object to be returned, must not be used by the thread
+		// that returns the objects
+		BLOCK,
+		// throw NoSuchElementException
+		DROP,
+		// go over the limit
+		ALLOCATE
+	}
+
+	/**
+	 * Links an idle object into a free list. Only the free lists hold on to a
+	 * node while its object is idle, so an object stranded on the list of a
+	 * thread that has gone away is collected along with the list.
+	 */
+	private static class Node<T>
+	{
+		final Tracker<T> tracker;
+		// only set while idle
+		T object = null;
+		Node<T> next = null;
+
+		public Node(Tracker<T> tracker, T object)
+		{
+			this.tracker = tracker;
+			this.object = object;
+		}
+	}
+
+	private static class FreeList<T>
+	{
+		Node<T> head = null;
+	}
+
+	private static class Tracker<T> extends WeakReference<T>
+	{
+		// the object's identity hash, kept so the table can be rebuilt after
+		// the object is gone
+		final int hash;
+		volatile boolean borrowed = false;
+		// only set while borrowed + capturing allocation sites
+		volatile Throwable allocationSite = null;
+		// only set while borrowed, ready for the return
+		Node<T> node = null;
+
+		public Tracker(T object, ReferenceQueue<T> queue)
+		{
+			super(object, queue);
+			this.hash = System.identityHashCode(object);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// class variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static volatile boolean captureAllocationSites = false;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// object variables
+	// /////////////////////////////////////////////////////////////////////////
+
+	private final String name;
+	private final PoolableObjectFactory<T> factory;
+	private final int traceSource;
+	// objects returned by any thread, taken back a whole chain at a time
+	private final AtomicReference<Node<T>> released = new AtomicReference<Node<T>>();
+	private final ThreadLocal<FreeList<T>> freeLists = new ThreadLocal<FreeList<T>>()
+	{
+		@Override
+		protected FreeList<T> initialValue()
+		{
+			return new FreeList<T>();
+		}
+	};
+	private final ReferenceQueue<T> collected = new ReferenceQueue<T>();
+	private final Set<Tracker<T>> trackers = new HashSet<Tracker<T>>();
+	// open addressed by identity hash, copied whenever trackers changes so
+	// returns can look objects up without locking
+	private volatile Tracker<T>[] table = newTable(MIN_TABLE_SIZE);
+	// 0 for no limit
+	private volatile int maxActive = 0;
+	private volatile int maxIdle = 0;
+	private volatile ExhaustedPolicy exhaustedPolicy = ExhaustedPolicy.ALLOCATE;
+	// blocked borrowers wait on this
+	private final Object exhaustedLock = new Object();
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	// created and not yet destroyed or collected
+	private final AtomicInteger live = new AtomicInteger();
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger leaked = new AtomicInteger();
+	private final AtomicInteger dropped = new AtomicInteger();
+	private final AtomicInteger discarded = new AtomicInteger();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// static initialization
+	// /////////////////////////////////////////////////////////////////////////
+
+	// /////////////////////////////////////////////////////////////////////////
+	// constructors
+	// /////////////////////////////////////////////////////////////////////////
+
+	public TrackedObjectPool(String name, PoolableObjectFactory<T> factory)
+	{
+		LogWrapper.v(TAG, "TrackedObjectPool::TrackedObjectPool enter",
+		        "this=", this, "name=", name, "factory=", factory);
+		this.name = name;
+		this.factory = factory;
+		this.traceSource = TraceRecorder.registerSource(name);
+		MetricsRegistry.register("pools." + name, this);
+		LogWrapper.v(TAG, "TrackedObjectPool::TrackedObjectPool exit");
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// public methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records a stack trace for every borrow so leaks can say where they came
+	 * from. Costs an exception per borrow, so debug builds only.
+	 */
+	public static void setCaptureAllocationSites(boolean capture)
+	{
+		captureAllocationSites = capture;
+	}
+
+	/**
+	 * Caps the number of objects borrowed and not yet returned, 0 for no
+	 * limit.
+	 */
+	public void setMaxActive(int maxActive, ExhaustedPolicy policy)
+	{
+		this.exhaustedPolicy = policy;
+		this.maxActive = maxActive;
+		// let anyone blocked see the new limit
+		synchronized (this.exhaustedLock)
+		{
+			this.exhaustedLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Caps the number of returned objects kept for reuse, anything over is
+	 * destroyed. 0 for no limit.
+	 */
+	public void setMaxIdle(int maxIdle)
+	{
+		this.maxIdle = maxIdle;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Number of objects made so far, which stays flat once the pool has
+	 * warmed up.
+	 */
+	public int getNumCreated()
+	{
+		return created.get();
+	}
+
+	public int getNumLeaked()
+	{
+		reapCollected();
+		return leaked.get();
+	}
+
+	/**
+	 * Number of borrows refused because the pool was exhausted.
+	 */
+	public int getNumDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Number of returned objects destroyed because of max idle.
+	 */
+	public int getNumDiscarded()
+	{
+		return discarded.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + " [borrowed=" + getNumActive() + " idle="
+		        + getNumIdle() + " created=" + getNumCreated() + " leaked="
+		        + getNumLeaked() + " dropped=" + getNumDropped()
+		        + " discarded=" + getNumDiscarded() + "]";
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// ObjectPool implementation
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Throws NoSuchElementException if the pool is exhausted and the policy is
+	 * DROP, and InterruptedException if the thread is interrupted while
+	 * blocked.
+	 */
+	@Override
+	public T borrowObject() throws Exception
+	{
+		assertOpen();
+		if (false == acquire())
+		{
+			this.dropped.incrementAndGet();
+			throw new NoSuchElementException("pool exhausted, pool=" + name);
+		}
+
+		FreeList<T> freeList = this.freeLists.get();
+		Node<T> node = freeList.head;
+		if (null == node)
+		{
+			// pick up everything that has been returned since we last looked
+			node = this.released.getAndSet(null);
+		}
+		if (null == node)
+		{
+			node = create();
+		}
+		else
+		{
+			freeList.head = node.next;
+			node.next = null;
+		}
+
+		// the object must only be reachable through the borrower from here on
+		// or a leak would never be collected
+		T object = node.object;
+		node.object = null;
+		Tracker<T> tracker = node.tracker;
+		tracker.node = node;
+		tracker.borrowed = true;
+		if (true == captureAllocationSites)
+		{
+			tracker.allocationSite = new Throwable("borrowed from pool="
+			        + name);
+		}
+		try
+		{
+			this.factory.activateObject(object);
+		}
+		catch (Exception e)
+		{
+			release(tracker);
+			destroy(tracker, object);
+			throw e;
+		}
+		TraceRecorder.record(TraceRecorder.POOL_BORROW, this.traceSource,
+		        tracker.hash);
+		return object;
+	}
+
+	/**
+	 * Safe to call from any thread.
+	 */
+	@Override
+	public void returnObject(T object) throws Exception
+	{
+		Tracker<T> tracker = checkBorrowed(object);
+		TraceRecorder.record(TraceRecorder.POOL_RETURN, this.traceSource,
+		        tracker.hash);
+		Node<T> node = tracker.node;
+		release(tracker);
+
+		try
+		{
+			if (false == this.factory.validateObject(object))
+			{
+				destroy(tracker, object);
+				return;
+			}
+			int limit = this.maxIdle;
+			// counts this one, it is no longer borrowed
+			int idle = this.live.get() - this.active.get();
+			if ((0 != limit) && (idle > limit))
+			{
+				// plenty idle already, let this one go
+				destroy(tracker, object);
+				this.discarded.incrementAndGet();
+				return;
+			}
+			this.factory.passivateObject(object);
+		}
+		catch (Exception e)
+		{
+			destroy(tracker, object);
+			throw e;
+		}
+		node.object = object;
+		push(node);
+	}
+
+	@Override
+	public void invalidateObject(T object) throws Exception
+	{
+		Tracker<T> tracker = checkBorrowed(object);
+		release(tracker);
+		destroy(tracker, object);
+	}
+
+	@Override
+	public void addObject() throws Exception
+	{
+		assertOpen();
+		Node<T> node = create();
+		this.factory.passivateObject(node.object);
+		push(node);
+	}
+
+	@Override
+	public int getNumActive()
+	{
+		reapCollected();
+		return active.get();
+	}
+
+	@Override
+	public int getNumIdle()
+	{
+		reapCollected();
+		return live.get() - active.get();
+	}
+
+	/**
+	 * Destroys the objects on the shared stack. Objects idle on a thread's own
+	 * free list stay there until that thread borrows them or goes away.
+	 */
+	@Override
+	public void clear() throws Exception
+	{
+		Node<T> node = this.released.getAndSet(null);
+		while (null != node)
+		{
+			destroy(node.tracker, node.object);
+			node = node.next;
+		}
+	}
+
+	@Override
+	public void close() throws Exception
+	{
+		super.close();
+		clear();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// private methods
+	// /////////////////////////////////////////////////////////////////////////
+
+	private Node<T> create() throws Exception
+	{
+		// take the chance to account for anything that has gone missing
+		reapCollected();
+		T object = this.factory.makeObject();
+		Tracker<T> tracker = new Tracker<T>(object, this.collected);
+		synchronized (this.trackers)
+		{
+			this.trackers.add(tracker);
+			rebuildTable();
+		}
+		this.live.incrementAndGet();
+		this.created.incrementAndGet();
+		return new Node<T>(tracker, object);
+	}
+
+	private boolean acquire() throws InterruptedException
+	{
+		int count = this.active.incrementAndGet();
+		int limit = this.maxActive;
+		if ((0 == limit) || (count <= limit))
+		{
+			return true;
+		}
+		switch (this.exhaustedPolicy)
+		{
+			case ALLOCATE:
+				return true;
+			case DROP:
+				releaseActive();
+				// a leaked object may be holding the slot
+				return (0 != reapCollected()) && acquire();
+			default:
+				releaseActive();
+				awaitActive();
+				return true;
+		}
+	}
+
+	private void awaitActive() throws InterruptedException
+	{
+		this.waiters.incrementAndGet();
+		try
+		{
+			while (true)
+			{
+				int count = this.active.get();
+				int limit = this.maxActive;
+				if ((0 == limit) || (count < limit))
+				{
+					if (true == this.active.compareAndSet(count, count + 1))
+					{
+						return;
+					}
+					continue;
+				}
+				reapCollected();
+				synchronized (this.exhaustedLock)
+				{
+					// returners only notify once they see us waiting
+					if (this.active.get() >= this.maxActive)
+					{
+						this.exhaustedLock.wait();
+					}
+				}
+			}
+		}
+		finally
+		{
+			this.waiters.decrementAndGet();
+		}
+	}
+
+	// the object is no longer borrowed, whatever happens to it next
+	private void release(Tracker<T> tracker)
+	{
+		tracker.node = null;
+		tracker.allocationSite = null;
+		tracker.borrowed = false;
+		releaseActive();
+	}
+
+	private void releaseActive()
+	{
+		this.active.decrementAndGet();
+		if (0 != this.waiters.get())
+		{
+			synchronized (this.exhaustedLock)
+			{
+				this.exhaustedLock.notifyAll();
+			}
+		}
+	}
+
+	private void push(Node<T> node)
+	{
+		Node<T> head;
+		do
+		{
+			head = this.released.get();
+			node.next = head;
+		}
+		while (false == this.released.compareAndSet(head, node));
+	}
+
+	private Tracker<T> checkBorrowed(T object)
+	{
+		Tracker<T> tracker = findTracker(object);
+		if (null == tracker)
+		{
+			throw new IllegalArgumentException("object not from pool=" + name);
+		}
+		if (false == tracker.borrowed)
+		{
+			// pushing it twice would corrupt the free list
+			throw new IllegalStateException("object returned twice to pool="
+			        + name);
+		}
+		return tracker;
+	}
+
+	private Tracker<T> findTracker(T object)
+	{
+		Tracker<T>[] table = this.table;
+		int mask = table.length - 1;
+		int index = System.identityHashCode(object) & mask;
+		while (true)
+		{
+			// the table is never more than half full so this always ends
+			Tracker<T> tracker = table[index];
+			if ((null == tracker) || (object == tracker.get()))
+			{
+				return tracker;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	private void destroy(Tracker<T> tracker, T object)
+	{
+		// stop tracking so the collection of this object isn't a leak
+		if (true == untrack(tracker))
+		{
+			try
+			{
+				this.factory.destroyObject(object);
+			}
+			catch (Exception e)
+			{
+				LogWrapper.w(TAG, "destroy failed, pool=", name, "message=",
+				        e.getMessage());
+			}
+		}
+	}
+
+	private boolean untrack(Tracker<T> tracker)
+	{
+		synchronized (this.trackers)
+		{
+			if (false == this.trackers.remove(tracker))
+			{
+				return false;
+			}
+			rebuildTable();
+		}
+		this.live.decrementAndGet();
+		return true;
+	}
+
+	// call with the trackers lock held
+	private void rebuildTable()
+	{
+		int size = MIN_TABLE_SIZE;
+		while (size < (2 * this.trackers.size()))
+		{
+			size <<= 1;
+		}
+		Tracker<T>[] table = newTable(size);
+		int mask = size - 1;
+		for (Tracker<T> tracker : this.trackers)
+		{
+			int index = tracker.hash & mask;
+			while (null != table[index])
+			{
+				index = (index + 1) & mask;
+			}
+			table[index] = tracker;
+		}
+		this.table = table;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Tracker<T>[] newTable(int size)
+	{
+		return new Tracker[size];
+	}
+
+	private int reapCollected()
+	{
+		int reaped = 0;
+		Tracker<?> collectedTracker;
+		while (null != (collectedTracker = (Tracker<?>) this.collected.poll()))
+		{
+			@SuppressWarnings("unchecked")
+			Tracker<T> tracker = (Tracker<T>) collectedTracker;
+			// destroyed objects were already untracked
+			if (false == untrack(tracker))
+			{
+				continue;
+			}
+			if (false == tracker.borrowed)
+			{
+				// idle on the free list of a thread that has gone away
+				continue;
+			}
+			this.leaked.incrementAndGet();
+			reaped++;
+			Throwable site = tracker.allocationSite;
+			if (null == site)
+			{
+				LogWrapper.w(TAG, "object leaked from pool=", name);
+			}
+			else
+			{
+				LogWrapper.w(TAG, "object leaked from pool=", name, "\n",
+				        Log.getStackTraceString(site));
+			}
+			releaseActive();
+		}
+		return reaped;
+	}
+}
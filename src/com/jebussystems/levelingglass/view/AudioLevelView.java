@@ -18,6 +18,7 @@ import android.util.AttributeSet;
 import android.view.View;
 
 import com.jebussystems.levelingglass.R;
+import com.jebussystems.levelingglass.control.records.LevelSnapshot;
 import com.jebussystems.levelingglass.util.LogWrapper;
 
 public class AudioLevelView extends View
@@ -37,6 +38,12 @@ public class AudioLevelView extends View
 	private static final int DEFAULT_HOLD_COLOR = Color.GRAY;
 	private static final int DEFAULT_MARK_COLOR = Color.WHITE;
 
+	/**
+	 * Hold value meaning there is no hold to draw. The same value the level
+	 * snapshots use, so a snapshot's hold can be passed straight in.
+	 */
+	public static final float NO_HOLD = LevelSnapshot.NO_HOLD;
+
 	// /////////////////////////////////////////////////////////////////////////
 	// types
 	// /////////////////////////////////////////////////////////////////////////
@@ -60,7 +67,7 @@ public class AudioLevelView extends View
 	private final int warning;
 	private final Set<Integer> marks = new HashSet<Integer>();
 	private float level;
-	private Float hold;
+	private float hold = NO_HOLD;
 
 	// internal paint variables
 	private Paint okPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -161,8 +168,13 @@ public class AudioLevelView extends View
 
 	public void setLevel(float level)
 	{
-		LogWrapper.v(TAG, "AudioLevelView::setLevel enter", "this=", this,
-		        "level=", level);
+		// called for every channel on every frame, don't box the level unless
+		// it's going to be logged
+		if (true == LogWrapper.isVerboseEnabled())
+		{
+			LogWrapper.v(TAG, "AudioLevelView::setLevel enter", "this=", this,
+			        "level=", level);
+		}
 		if (this.level != level)
 		{
 			// set the level
@@ -180,10 +192,16 @@ public class AudioLevelView extends View
 		return level;
 	}
 
-	public void setHold(Float hold)
+	/**
+	 * Sets the hold, or clears it when passed {@link #NO_HOLD}.
+	 */
+	public void setHold(float hold)
 	{
-		LogWrapper.v(TAG, "AudioLevelView::setHold enter", "this=", this,
-		        "hold=", hold);
+		if (true == LogWrapper.isVerboseEnabled())
+		{
+			LogWrapper.v(TAG, "AudioLevelView::setHold enter", "this=", this,
+			        "hold=", hold);
+		}
 		if (this.hold != hold)
 		{
 			// set the level
@@ -196,7 +214,24 @@ public class AudioLevelView extends View
 		LogWrapper.v(TAG, "AudioLevelView::setHold exit");
 	}
 
-	public Float getHold()
+	/**
+	 * Sets the level and hold together, recalculating and redrawing at most
+	 * once and only if one of them changed.
+	 */
+	public void setLevel(float level, float hold)
+	{
+		if ((this.level != level) || (this.hold != hold))
+		{
+			this.level = level;
+			this.hold = hold;
+			// force a recalculation of the dynamic values
+			updateDynamicValues();
+			// redraw
+			invalidate();
+		}
+	}
+
+	public float getHold()
 	{
 		return hold;
 	}
@@ -230,7 +265,7 @@ public class AudioLevelView extends View
 	{
 		LogWrapper.v(TAG, "AudioLevelView::onSizeChanged enter", "this=", this,
 		        "width=", width, "height=", height, "oldwidth=", oldwidth,
-		        "oldheight=" + oldheight);
+		        "oldheight=", oldheight);
 		
 		LogWrapper.d(TAG, "sizing view for width=", width, "height=", height);
 		
@@ -394,7 +429,7 @@ public class AudioLevelView extends View
 		}
 
 		// if we have a hold then calculate where it should be placed
-		if (null != getHold())
+		if (NO_HOLD != getHold())
 		{
 			// calculate the percentage point of the hold
 			float percent = (getHold() - getFloor()) / (float) span;